@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.drawable;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.test.AndroidTestCase;
+
+/**
+ * The vectors in src/androidTest/res are compiled by vectorold-compiler.gradle,
+ * see build.gradle.
+ */
+public class CompiledVectorLoaderTest extends AndroidTestCase {
+
+    private static final int SIZE = 96;
+
+    private VectorDrawable inflateXml(String name) {
+        final Resources res = getContext().getResources();
+        final int id = res.getIdentifier(name, "drawable", getContext().getPackageName());
+        assertTrue("No drawable " + name, id != 0);
+        final VectorDrawable drawable = VectorDrawable.create(res, id);
+        assertNotNull(drawable);
+        return drawable;
+    }
+
+    private static Bitmap render(VectorDrawable drawable) {
+        final Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        drawable.setBounds(0, 0, SIZE, SIZE);
+        drawable.draw(new Canvas(bitmap));
+        return bitmap;
+    }
+
+    public void testSameAsXml() {
+        final VectorDrawable xml = inflateXml("vectorold_round_trip");
+        final VectorDrawable compiled = CompiledVectorLoader.load(getContext().getResources(),
+                "vectorold_round_trip");
+        assertNotNull(compiled);
+
+        assertEquals(xml.getIntrinsicWidth(), compiled.getIntrinsicWidth());
+        assertEquals(xml.getIntrinsicHeight(), compiled.getIntrinsicHeight());
+        assertEquals(xml.getAlpha(), compiled.getAlpha());
+        assertEquals(xml.getPixelSize(), compiled.getPixelSize(), 0.0f);
+        assertNotNull(compiled.getTargetByName("rotation"));
+        assertNotNull(compiled.getTargetByName("circle"));
+        assertTrue(render(xml).sameAs(render(compiled)));
+    }
+
+    public void testQualifiedValueIsNotCompiled() {
+        // The color has an alternative in values-night
+        assertNull(CompiledVectorLoader.load(getContext().getResources(),
+                "vectorold_day_night"));
+    }
+
+    public void testQualifiedDrawableIsNotCompiled() {
+        // The drawable has an alternative in drawable-v14
+        assertNull(CompiledVectorLoader.load(getContext().getResources(),
+                "vectorold_qualified"));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.drawable;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.test.AndroidTestCase;
+
+import com.hippo.vectorold.util.BitmapPool;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class VectorDrawableBitmapPoolTest extends AndroidTestCase {
+
+    private RecordingBitmapPool mPool;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPool = new RecordingBitmapPool();
+        VectorDrawable.setBitmapPool(mPool);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        VectorDrawable.setBitmapPool(null);
+        super.tearDown();
+    }
+
+    private VectorDrawable inflate() {
+        final Resources res = getContext().getResources();
+        final int id = res.getIdentifier("vectorold_round_trip", "drawable",
+                getContext().getPackageName());
+        assertTrue(id != 0);
+        final VectorDrawable drawable = VectorDrawable.create(res, id);
+        assertNotNull(drawable);
+        return drawable;
+    }
+
+    private static void draw(VectorDrawable drawable, int size) {
+        drawable.setBounds(0, 0, size, size);
+        drawable.draw(new Canvas(Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888)));
+    }
+
+    public void testUnsharedStateReleasesBitmap() {
+        final VectorDrawable drawable = inflate();
+        draw(drawable, 48);
+        draw(drawable, 96);
+        assertEquals(1, mPool.mPut.size());
+    }
+
+    public void testSharedStateNeverReleasesBitmap() {
+        final VectorDrawable first = inflate();
+        final VectorDrawable second = (VectorDrawable) first.getConstantState().newDrawable();
+        // Both of them draw the same cache bitmap, and the second one
+        // replaces it while the display list of the first one still has it
+        draw(first, 48);
+        draw(second, 96);
+        draw(first, 48);
+        assertTrue(mPool.mPut.isEmpty());
+    }
+
+    public void testMutatedStateReleasesBitmap() {
+        final VectorDrawable first = inflate();
+        final VectorDrawable second = (VectorDrawable) first.getConstantState()
+                .newDrawable().mutate();
+        draw(first, 48);
+        draw(second, 48);
+        draw(second, 96);
+        assertEquals(1, mPool.mPut.size());
+        // The state of the first one is still shared
+        draw(first, 96);
+        assertEquals(1, mPool.mPut.size());
+    }
+
+    private static class RecordingBitmapPool implements BitmapPool {
+
+        final List<Bitmap> mPut = new ArrayList<>();
+
+        @Override
+        public Bitmap get(int width, int height, Bitmap.Config config) {
+            return null;
+        }
+
+        @Override
+        public void put(Bitmap bitmap) {
+            mPut.add(bitmap);
+        }
+
+        @Override
+        public void trimMemory(int level) {
+        }
+
+        @Override
+        public void clear() {
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.drawable;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.test.AndroidTestCase;
+
+public class VectorDrawableCanvasMatrixTest extends AndroidTestCase {
+
+    // Three times the viewport size
+    private static final int SIZE = 72;
+
+    @Override
+    protected void tearDown() throws Exception {
+        VectorDrawable.setUseCanvasMatrix(false);
+        super.tearDown();
+    }
+
+    private Bitmap render(boolean useCanvasMatrix) {
+        VectorDrawable.setUseCanvasMatrix(useCanvasMatrix);
+        final Resources res = getContext().getResources();
+        final int id = res.getIdentifier("vectorold_stroke", "drawable",
+                getContext().getPackageName());
+        assertTrue(id != 0);
+        final VectorDrawable drawable = VectorDrawable.create(res, id);
+        assertNotNull(drawable);
+
+        final Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        drawable.setBounds(0, 0, SIZE, SIZE);
+        drawable.draw(new Canvas(bitmap));
+        return bitmap;
+    }
+
+    /**
+     * @return the number of rows the horizontal stroke covers in the middle
+     * column
+     */
+    private static int getStrokeWidth(Bitmap bitmap) {
+        int width = 0;
+        for (int y = 0; y < bitmap.getHeight(); y++) {
+            if (Color.alpha(bitmap.getPixel(SIZE / 2, y)) >= 0x80) {
+                width++;
+            }
+        }
+        return width;
+    }
+
+    public void testStrokeWidth() {
+        final int width = getStrokeWidth(render(false));
+        // The stroke width of 2 is scaled by the viewport scale
+        assertTrue("width = " + width, Math.abs(width - 6) <= 1);
+        assertEquals(width, getStrokeWidth(render(true)));
+    }
+}
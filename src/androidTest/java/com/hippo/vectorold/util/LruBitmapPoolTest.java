@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.util;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import junit.framework.TestCase;
+
+public class LruBitmapPoolTest extends TestCase {
+
+    // A 10x10 ARGB_8888 bitmap
+    private static final int BYTES = 10 * 10 * 4;
+
+    private static Bitmap newBitmap() {
+        return Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+    }
+
+    public void testGet() {
+        final LruBitmapPool pool = new LruBitmapPool(BYTES * 4);
+        assertNull(pool.get(10, 10, Bitmap.Config.ARGB_8888));
+
+        final Bitmap bitmap = newBitmap();
+        pool.put(bitmap);
+        assertEquals(BYTES, pool.getSize());
+        assertSame(bitmap, pool.get(10, 10, Bitmap.Config.ARGB_8888));
+        assertEquals(0, pool.getSize());
+        // It is taken out
+        assertNull(pool.get(10, 10, Bitmap.Config.ARGB_8888));
+
+        assertEquals(1, pool.getHitCount());
+        assertEquals(2, pool.getMissCount());
+    }
+
+    public void testGetOtherSize() {
+        final LruBitmapPool pool = new LruBitmapPool(BYTES * 4);
+        final Bitmap bitmap = newBitmap();
+        pool.put(bitmap);
+        assertNull(pool.get(20, 20, Bitmap.Config.ARGB_8888));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            // Reconfigured to the smaller size
+            assertSame(bitmap, pool.get(5, 5, Bitmap.Config.ARGB_8888));
+            assertEquals(5, bitmap.getWidth());
+        } else {
+            assertNull(pool.get(5, 5, Bitmap.Config.ARGB_8888));
+        }
+    }
+
+    public void testBudget() {
+        final LruBitmapPool pool = new LruBitmapPool(BYTES * 2);
+        pool.put(newBitmap());
+        pool.put(newBitmap());
+        pool.put(newBitmap());
+        assertEquals(BYTES * 2, pool.getSize());
+
+        // Larger than the whole budget
+        pool.put(Bitmap.createBitmap(20, 20, Bitmap.Config.ARGB_8888));
+        assertEquals(BYTES * 2, pool.getSize());
+    }
+
+    public void testIgnoreRecycled() {
+        final LruBitmapPool pool = new LruBitmapPool(BYTES * 2);
+        final Bitmap bitmap = newBitmap();
+        bitmap.recycle();
+        pool.put(bitmap);
+        pool.put(null);
+        assertEquals(0, pool.getSize());
+    }
+
+    public void testTrimMemory() {
+        final LruBitmapPool pool = new LruBitmapPool(BYTES * 4);
+        for (int i = 0; i < 4; i++) {
+            pool.put(newBitmap());
+        }
+        pool.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(BYTES * 4, pool.getSize());
+        pool.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(BYTES * 2, pool.getSize());
+        pool.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertEquals(0, pool.getSize());
+    }
+
+    public void testClear() {
+        final LruBitmapPool pool = new LruBitmapPool(BYTES * 4);
+        pool.put(newBitmap());
+        pool.put(newBitmap());
+        pool.clear();
+        assertEquals(0, pool.getSize());
+        assertNull(pool.get(10, 10, Bitmap.Config.ARGB_8888));
+    }
+}
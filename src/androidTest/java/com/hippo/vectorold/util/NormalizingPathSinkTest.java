@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+
+public class NormalizingPathSinkTest extends TestCase {
+
+    /**
+     * Records the commands, arcs are converted the same way as
+     * {@link GraphicsPathSink} does.
+     */
+    private static class RecordingPathSink implements PathSink {
+        final ArrayList<String> mCommands = new ArrayList<String>();
+        private float mCurrentX;
+        private float mCurrentY;
+        private float mStartX;
+        private float mStartY;
+
+        @Override
+        public void moveTo(float x, float y) {
+            mCommands.add("M" + x + "," + y);
+            mCurrentX = mStartX = x;
+            mCurrentY = mStartY = y;
+        }
+
+        @Override
+        public void lineTo(float x, float y) {
+            mCommands.add("L" + x + "," + y);
+            mCurrentX = x;
+            mCurrentY = y;
+        }
+
+        @Override
+        public void quadTo(float x1, float y1, float x2, float y2) {
+            mCommands.add("Q" + x1 + "," + y1 + "," + x2 + "," + y2);
+            mCurrentX = x2;
+            mCurrentY = y2;
+        }
+
+        @Override
+        public void cubicTo(float x1, float y1, float x2, float y2, float x3, float y3) {
+            mCommands.add("C" + x1 + "," + y1 + "," + x2 + "," + y2 + "," + x3 + "," + y3);
+            mCurrentX = x3;
+            mCurrentY = y3;
+        }
+
+        @Override
+        public void arcTo(float rx, float ry, float rotation, boolean largeArc, boolean sweep,
+                float x, float y) {
+            PathParser.arcToCubics(this, mCurrentX, mCurrentY, x, y, rx, ry, rotation,
+                    largeArc, sweep);
+            mCurrentX = x;
+            mCurrentY = y;
+        }
+
+        @Override
+        public void close() {
+            mCommands.add("Z");
+            mCurrentX = mStartX;
+            mCurrentY = mStartY;
+        }
+    }
+
+    private static void assertOnlyMLCZ(PathData data) {
+        for (int i = 0, n = data.getCommandCount(); i < n; i++) {
+            final char command = data.getCommand(i);
+            assertTrue("Command " + command,
+                    command == 'M' || command == 'L' || command == 'C' || command == 'Z');
+        }
+    }
+
+    public void testRelativeCommands() {
+        final PathData data = PathParser.createPathData("m10,10 l5,0 h5 v5 z l1,1");
+        final PathData normalized = data.normalize();
+        assertTrue(normalized.isNormalized());
+        assertOnlyMLCZ(normalized);
+        final RecordingPathSink sink = new RecordingPathSink();
+        normalized.visit(sink);
+        assertEquals("[M10.0,10.0, L15.0,10.0, L20.0,10.0, L20.0,15.0, Z, L11.0,11.0]",
+                sink.mCommands.toString());
+    }
+
+    public void testQuadIsElevated() {
+        final PathData normalized = PathParser.createPathData("M0,0 Q3,3 6,0").normalize();
+        final RecordingPathSink sink = new RecordingPathSink();
+        normalized.visit(sink);
+        assertEquals("[M0.0,0.0, C2.0,2.0,4.0,2.0,6.0,0.0]", sink.mCommands.toString());
+    }
+
+    public void testArcsSameAsDrawn() {
+        final String[] paths = {
+                "M0,0 A10,10 0 0 1 20,0",
+                "M0,0 a10,10 0 1 0 20,0 z",
+                "M5,5 A20,10 30 0 1 30,20 A20,10 -30 1 1 5,5",
+                // The radius is too small, it is scaled up
+                "M0,0 A1,1 0 0 1 20,0",
+                "M0,0 a25,25 -30 0,1 50,-25 l 50,-25",
+        };
+        for (String path : paths) {
+            final PathData data = PathParser.createPathData(path);
+            final RecordingPathSink expected = new RecordingPathSink();
+            data.visit(expected);
+            final RecordingPathSink actual = new RecordingPathSink();
+            final PathData normalized = data.normalize();
+            assertOnlyMLCZ(normalized);
+            normalized.visit(actual);
+            assertEquals(path, expected.mCommands, actual.mCommands);
+        }
+    }
+
+    public void testArcOnCircle() {
+        final PathData normalized = PathParser.createPathData("M0,0 A10,10 0 0 1 20,0")
+                .normalize();
+        assertEquals('M', normalized.getCommand(0));
+        // Half of a circle, four curves of 45 degrees
+        assertEquals(5, normalized.getCommandCount());
+        final float[] params = normalized.mParams;
+        for (int i = 2; i < params.length; i += 6) {
+            // The end point of each curve is on the circle
+            final float x = params[i + 4] - 10;
+            final float y = params[i + 5];
+            assertEquals(10.0f, (float) Math.hypot(x, y), 1e-3f);
+        }
+        assertEquals(20.0f, params[params.length - 2], 1e-3f);
+        assertEquals(0.0f, params[params.length - 1], 1e-3f);
+    }
+
+    public void testNormalizedIsCached() {
+        final PathData data = PathParser.createPathData("m0,0 l1,1");
+        final PathData normalized = data.normalize();
+        assertSame(normalized, data.normalize());
+        assertSame(normalized, normalized.normalize());
+        data.setParams(PathParser.createPathData("m1,1 l2,2"));
+        assertNotSame(normalized, data.normalize());
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.util;
+
+import junit.framework.TestCase;
+
+public class PathDataCacheTest extends TestCase {
+
+    private static final String PATH = "M0,0 L10,10 z";
+
+    @Override
+    protected void tearDown() throws Exception {
+        PathDataCache.setMaxBytes(0);
+        super.tearDown();
+    }
+
+    public void testDisabled() {
+        PathDataCache.setMaxBytes(0);
+        final PathData data = PathDataCache.obtain(PATH);
+        assertNotSame(data, PathDataCache.obtain(PATH));
+        assertFalse(data.isShared());
+        assertEquals(0, PathDataCache.getSize());
+    }
+
+    public void testShared() {
+        PathDataCache.setMaxBytes(64 * 1024);
+        PathDataCache.clear();
+        final PathData data = PathDataCache.obtain(PATH);
+        assertSame(data, PathDataCache.obtain(PATH));
+        assertTrue(data.isShared());
+        assertEquals(1, PathDataCache.getHitCount());
+        assertEquals(1, PathDataCache.getMissCount());
+        assertTrue(PathDataCache.getSize() > 0);
+    }
+
+    public void testClear() {
+        PathDataCache.setMaxBytes(64 * 1024);
+        final PathData data = PathDataCache.obtain(PATH);
+        PathDataCache.clear();
+        assertEquals(0, PathDataCache.getHitCount());
+        assertEquals(0, PathDataCache.getMissCount());
+        assertEquals(0, PathDataCache.getSize());
+        assertNotSame(data, PathDataCache.obtain(PATH));
+    }
+
+    public void testEviction() {
+        // Room for about one entry
+        PathDataCache.setMaxBytes(200);
+        final PathData data = PathDataCache.obtain(PATH);
+        PathDataCache.obtain("M1,1 L2,2 z");
+        assertNotSame(data, PathDataCache.obtain(PATH));
+        assertTrue(PathDataCache.getSize() <= 200);
+    }
+
+    public void testNull() {
+        PathDataCache.setMaxBytes(64 * 1024);
+        assertNull(PathDataCache.obtain(null));
+    }
+
+    public void testCopyOnWrite() {
+        PathDataCache.setMaxBytes(64 * 1024);
+        final PathData data = PathDataCache.obtain(PATH);
+        final PathData copy = new PathData(data);
+        copy.setParams(PathParser.createPathData("M5,5 L6,6 z"));
+        assertEquals(0.0f, PathDataCache.obtain(PATH).mParams[0], 0.0f);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.util;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+public class PathDataTest extends TestCase {
+
+    public void testCreate() {
+        final PathData data = PathData.create(new byte[] {'M', 'L', 'Z'},
+                new int[] {0, 2, 4, 4}, new float[] {1, 2, 3, 4});
+        assertEquals(3, data.getCommandCount());
+        assertEquals('L', data.getCommand(1));
+        assertEquals(4, data.getParamCount());
+    }
+
+    public void testCreateRejectsBadOffsets() {
+        try {
+            PathData.create(new byte[] {'M', 'L'}, new int[] {0, 2, 3}, new float[] {1, 2, 3, 4});
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            PathData.create(new byte[] {'M', 'L'}, new int[] {0, 4, 2}, new float[] {1, 2});
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    public void testNodesRoundTrip() {
+        final PathParser.PathDataNode[] nodes =
+                PathParser.createNodesFromPathData("M1,2 l3,4 h5 z");
+        final PathParser.PathDataNode[] result = PathData.fromNodes(nodes).toNodes();
+        assertEquals(nodes.length, result.length);
+        for (int i = 0; i < nodes.length; i++) {
+            assertEquals(nodes[i].getType(), result[i].getType());
+            assertTrue(Arrays.equals(nodes[i].getParams(), result[i].getParams()));
+        }
+        assertNull(PathData.fromNodes(null));
+    }
+
+    public void testCopyOwnsParams() {
+        final PathData data = PathParser.createPathData("M0,0 L10,10");
+        final PathData copy = new PathData(data);
+        copy.setParams(PathParser.createPathData("M1,1 L2,2"));
+        assertEquals(0.0f, data.mParams[0], 0.0f);
+        assertEquals(1.0f, copy.mParams[0], 0.0f);
+        // Commands never change, so they are shared
+        assertSame(data.mCommands, copy.mCommands);
+    }
+
+    public void testCanMorph() {
+        final PathData data = PathParser.createPathData("M0,0 L10,10");
+        assertTrue(data.canMorph(PathParser.createPathData("M5,5 L0,0")));
+        assertFalse(data.canMorph(PathParser.createPathData("M5,5 C0,0 1,1 2,2")));
+        assertFalse(data.canMorph(PathParser.createPathData("M5,5 L0,0 1,1")));
+        assertFalse(data.canMorph(null));
+    }
+
+    public void testInterpolate() {
+        final PathData from = PathParser.createPathData("M0,0 L10,20");
+        final PathData to = PathParser.createPathData("M10,10 L20,40");
+        final PathData data = new PathData(from);
+        data.interpolate(from, to, 0.5f);
+        assertTrue(Arrays.equals(new float[] {5, 5, 15, 30}, data.mParams));
+    }
+
+    public void testSharedIsNotModifiable() {
+        final PathData data = PathParser.createPathData("M0,0 L10,10");
+        data.mShared = true;
+        try {
+            data.setParams(PathParser.createPathData("M1,1 L2,2"));
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        try {
+            data.interpolate(data, data, 0.5f);
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.util;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+public class PathParserTest extends TestCase {
+
+    private static void assertNodes(String pathData, String expected) {
+        final PathParser.PathDataNode[] nodes = PathParser.createNodesFromPathData(pathData);
+        final StringBuilder sb = new StringBuilder();
+        for (PathParser.PathDataNode node : nodes) {
+            if (sb.length() != 0) {
+                sb.append(' ');
+            }
+            sb.append(node.getType()).append(Arrays.toString(node.getParams()));
+        }
+        assertEquals(pathData, expected, sb.toString());
+    }
+
+    public void testSameAsOldParser() {
+        // The results of the parser before the scanner was rewritten
+        assertNodes("M+1,+2L+3-4", "M[1.0, 2.0] L[3.0, -4.0]");
+        assertNodes("m10,10h-5v5z", "m[10.0, 10.0] h[-5.0] v[5.0] z[]");
+        assertNodes("M1-2-3-4", "M[1.0, -2.0, -3.0, -4.0]");
+        assertNodes("c1,2,3,4,5,6s1,2,3,4", "c[1.0, 2.0, 3.0, 4.0, 5.0, 6.0] s[1.0, 2.0, 3.0, 4.0]");
+        assertNodes("a25,25 -30 0,1 50,-25", "a[25.0, 25.0, -30.0, 0.0, 1.0, 50.0, -25.0]");
+    }
+
+    public void testExponent() {
+        assertNodes("M1e2,2E-1L3.5e+1,-4", "M[100.0, 0.2] L[35.0, -4.0]");
+        assertNodes("M1e5 2", "M[100000.0, 2.0]");
+        // The exponent has no fraction, the point starts the next number
+        assertNodes("M.5e-2.5", "M[0.005, 0.5]");
+        assertNodes("M0.1e1.5", "M[1.0, 0.5]");
+    }
+
+    public void testSecondPointStartsNumber() {
+        assertNodes("M1.2.3.4", "M[1.2, 0.3, 0.4]");
+        assertNodes("M-.5-.5l.5.5", "M[-0.5, -0.5] l[0.5, 0.5]");
+    }
+
+    public void testSeparators() {
+        assertNodes("M1 , 2\t3\n4,5 6", "M[1.0, 2.0, 3.0, 4.0, 5.0, 6.0]");
+        assertNodes("  M 1 2 z ", "M[1.0, 2.0] z[]");
+    }
+
+    public void testSameAsParseFloat() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            final String number;
+            switch (i % 4) {
+                case 0:
+                    number = Float.toString((random.nextFloat() - 0.5f)
+                            * (float) Math.pow(10, random.nextInt(20) - 10));
+                    break;
+                case 1:
+                    number = String.format(Locale.US, "%.6f", random.nextDouble() * 1000 - 500);
+                    break;
+                case 2:
+                    number = (random.nextInt(2000000) - 1000000) + "e" + (random.nextInt(30) - 15);
+                    break;
+                default:
+                    number = Integer.toString(random.nextInt());
+                    break;
+            }
+            final float value = PathParser.createNodesFromPathData("M" + number + " 0")[0]
+                    .getParams()[0];
+            assertEquals(number, Float.floatToIntBits(Float.parseFloat(number)),
+                    Float.floatToIntBits(value));
+        }
+    }
+
+    public void testNull() {
+        assertNull(PathParser.createPathData(null));
+        assertNull(PathParser.createNodesFromPathData(null));
+        assertNull(PathParser.createPathFromPathData(null));
+        final NodesPathSink sink = new NodesPathSink();
+        PathParser.parsePathData(null, sink);
+        assertEquals(0, sink.getNodes().length);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.util;
+
+import android.graphics.Path;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class SimplifyingPathSinkTest extends TestCase {
+
+    /**
+     * Records the commands, the sink only uses moveTo, lineTo and close.
+     */
+    private static class RecordingPath extends Path {
+        final ArrayList<String> mCommands = new ArrayList<String>();
+        // The points of moveTo and lineTo, x and y interleaved
+        final ArrayList<Float> mPoints = new ArrayList<Float>();
+
+        @Override
+        public void moveTo(float x, float y) {
+            mCommands.add("M" + x + "," + y);
+            mPoints.add(x);
+            mPoints.add(y);
+        }
+
+        @Override
+        public void lineTo(float x, float y) {
+            mCommands.add("L" + x + "," + y);
+            mPoints.add(x);
+            mPoints.add(y);
+        }
+
+        @Override
+        public void close() {
+            mCommands.add("Z");
+        }
+
+        @Override
+        public void reset() {
+            mCommands.clear();
+            mPoints.clear();
+        }
+    }
+
+    private static void assertCommands(RecordingPath path, String... expected) {
+        assertEquals(Arrays.asList(expected).toString(), path.mCommands.toString());
+    }
+
+    public void testCollinear() {
+        final RecordingPath path = new RecordingPath();
+        final SimplifyingPathSink sink = new SimplifyingPathSink(path, 0.5f);
+        sink.moveTo(0, 0);
+        sink.lineTo(1, 0);
+        sink.lineTo(2, 0.1f);
+        sink.lineTo(3, 0);
+        sink.finish();
+        assertCommands(path, "M0.0,0.0", "L3.0,0.0");
+    }
+
+    public void testCorner() {
+        final RecordingPath path = new RecordingPath();
+        final SimplifyingPathSink sink = new SimplifyingPathSink(path, 0.5f);
+        sink.moveTo(0, 0);
+        sink.lineTo(1, 5);
+        sink.lineTo(2, 0);
+        // Turns back, it is far from the segment but on the line
+        sink.lineTo(-3, 0);
+        sink.finish();
+        assertCommands(path, "M0.0,0.0", "L1.0,5.0", "L2.0,0.0", "L-3.0,0.0");
+    }
+
+    public void testFinish() {
+        final RecordingPath path = new RecordingPath();
+        final SimplifyingPathSink sink = new SimplifyingPathSink(path, 0.5f);
+        sink.moveTo(0, 0);
+        sink.lineTo(0, 10);
+        assertTrue(path.mCommands.isEmpty());
+        sink.finish();
+        assertCommands(path, "M0.0,0.0", "L0.0,10.0");
+    }
+
+    public void testClose() {
+        final RecordingPath path = new RecordingPath();
+        final SimplifyingPathSink sink = new SimplifyingPathSink(path, 0.5f);
+        sink.moveTo(0, 0);
+        sink.lineTo(10, 0);
+        sink.lineTo(10, 10);
+        sink.lineTo(0, 10);
+        sink.close();
+        sink.finish();
+        assertCommands(path, "M0.0,0.0", "L10.0,0.0", "L10.0,10.0", "L0.0,10.0", "Z");
+    }
+
+    public void testContinueAfterClose() {
+        final RecordingPath path = new RecordingPath();
+        final SimplifyingPathSink sink = new SimplifyingPathSink(path, 0.5f);
+        sink.moveTo(5, 5);
+        sink.lineTo(10, 5);
+        sink.lineTo(10, 10);
+        sink.close();
+        // The next contour starts at the start of the closed one
+        sink.lineTo(0, 5);
+        sink.lineTo(0, 0);
+        sink.finish();
+        assertCommands(path, "M5.0,5.0", "L10.0,5.0", "L10.0,10.0", "Z",
+                "M5.0,5.0", "L0.0,5.0", "L0.0,0.0");
+    }
+
+    public void testQuad() {
+        final float tolerance = 0.5f;
+        final RecordingPath path = new RecordingPath();
+        final SimplifyingPathSink sink = new SimplifyingPathSink(path, tolerance);
+        sink.moveTo(0, 0);
+        // x = 100t, y = 200t(1 - t)
+        sink.quadTo(50, 100, 100, 0);
+        sink.finish();
+
+        final int count = path.mPoints.size() / 2;
+        assertTrue(count > 2 && count <= 101);
+        assertEquals(0.0f, path.mPoints.get(0), 0.0f);
+        assertEquals(100.0f, path.mPoints.get(count * 2 - 2), 0.0f);
+        // Every vertex is on the curve
+        for (int i = 0; i < count; i++) {
+            final float x = path.mPoints.get(i * 2);
+            final float y = path.mPoints.get(i * 2 + 1);
+            final float t = x / 100;
+            assertEquals(200 * t * (1 - t), y, 0.001f);
+        }
+        // The curve is within the tolerance of the lines
+        for (int i = 0; i <= 1000; i++) {
+            final float t = i / 1000.0f;
+            final float distance = distanceToLines(path, 100 * t, 200 * t * (1 - t));
+            assertTrue("t = " + t + ", distance = " + distance, distance <= tolerance);
+        }
+    }
+
+    public void testArc() {
+        final RecordingPath path = new RecordingPath();
+        final SimplifyingPathSink sink = new SimplifyingPathSink(path, 0.1f);
+        // A circle of radius 10 around (10, 10)
+        sink.moveTo(0, 10);
+        sink.arcTo(10, 10, 0, false, true, 20, 10);
+        sink.arcTo(10, 10, 0, false, true, 0, 10);
+        sink.close();
+        sink.finish();
+
+        final int count = path.mPoints.size() / 2;
+        assertTrue(count > 4);
+        assertEquals("Z", path.mCommands.get(path.mCommands.size() - 1));
+        for (int i = 0; i < count; i++) {
+            final float x = path.mPoints.get(i * 2);
+            final float y = path.mPoints.get(i * 2 + 1);
+            assertEquals(10.0f, (float) Math.hypot(x - 10, y - 10), 0.01f);
+        }
+    }
+
+    public void testSetPath() {
+        final RecordingPath first = new RecordingPath();
+        final SimplifyingPathSink sink = new SimplifyingPathSink(first, 0.5f);
+        sink.moveTo(0, 0);
+        sink.lineTo(10, 10);
+        sink.finish();
+
+        final RecordingPath second = new RecordingPath();
+        sink.setPath(second, 0.5f);
+        assertSame(second, sink.getPath());
+        sink.lineTo(0, 10);
+        sink.finish();
+        // It starts from the origin again
+        assertCommands(second, "M0.0,0.0", "L0.0,10.0");
+        assertCommands(first, "M0.0,0.0", "L10.0,10.0");
+    }
+
+    private static float distanceToLines(RecordingPath path, float x, float y) {
+        float min = Float.MAX_VALUE;
+        for (int i = 2, n = path.mPoints.size(); i + 1 < n; i += 2) {
+            final float x0 = path.mPoints.get(i - 2);
+            final float y0 = path.mPoints.get(i - 1);
+            final float dx = path.mPoints.get(i) - x0;
+            final float dy = path.mPoints.get(i + 1) - y0;
+            final float lengthSquared = dx * dx + dy * dy;
+            float t = lengthSquared == 0.0f
+                    ? 0.0f : ((x - x0) * dx + (y - y0) * dy) / lengthSquared;
+            t = Math.max(0.0f, Math.min(t, 1.0f));
+            min = Math.min(min, (float) Math.hypot(x - x0 - t * dx, y - y0 - t * dy));
+        }
+        return min;
+    }
+}
@@ -33,7 +33,8 @@ import android.util.TypedValue;
 import android.util.Xml;
 import android.view.InflateException;
 import com.hippo.vectorold.R;
-import com.hippo.vectorold.util.PathParser;
+import com.hippo.vectorold.util.PathData;
+import com.hippo.vectorold.util.PathDataCache;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
@@ -192,50 +193,46 @@ public class AnimatorInflater {
     /**
      * PathDataEvaluator is used to interpolate between two paths which are
      * represented in the same format but different control points' values.
-     * The path is represented as an array of PathDataNode here, which is
-     * fundamentally an array of floating point numbers.
+     * The path is represented as a PathData here, which is fundamentally
+     * an array of floating point numbers.
      */
-    private static class PathDataEvaluator implements TypeEvaluator<PathParser.PathDataNode[]> {
-        private PathParser.PathDataNode[] mNodeArray;
+    private static class PathDataEvaluator implements TypeEvaluator<PathData> {
+        private PathData mPathData;
 
         /**
-         * Create a PathParser.PathDataNode[] that does not reuse the animated value.
+         * Create a PathData that does not reuse the animated value.
          * Care must be taken when using this option because on every evaluation
-         * a new <code>PathParser.PathDataNode[]</code> will be allocated.
+         * a new <code>PathData</code> will be allocated.
          */
         private PathDataEvaluator() {}
 
         /**
-         * Create a PathDataEvaluator that reuses <code>nodeArray</code> for every evaluate() call.
+         * Create a PathDataEvaluator that reuses <code>pathData</code> for every evaluate() call.
          * Caution must be taken to ensure that the value returned from
          * {@link android.animation.ValueAnimator#getAnimatedValue()} is not cached, modified, or
          * used across threads. The value will be modified on each <code>evaluate()</code> call.
          *
-         * @param nodeArray The array to modify and return from <code>evaluate</code>.
+         * @param pathData The PathData to modify and return from <code>evaluate</code>.
          */
-        public PathDataEvaluator(PathParser.PathDataNode[] nodeArray) {
-            mNodeArray = nodeArray;
+        public PathDataEvaluator(PathData pathData) {
+            mPathData = pathData;
         }
 
         @Override
-        public PathParser.PathDataNode[] evaluate(float fraction,
-                PathParser.PathDataNode[] startPathData,
-                PathParser.PathDataNode[] endPathData) {
-            if (!PathParser.canMorph(startPathData, endPathData)) {
+        public PathData evaluate(float fraction, PathData startPathData,
+                PathData endPathData) {
+            if (!startPathData.canMorph(endPathData)) {
                 throw new IllegalArgumentException("Can't interpolate between"
                         + " two incompatible pathData");
             }
 
-            if (mNodeArray == null || !PathParser.canMorph(mNodeArray, startPathData)) {
-                mNodeArray = PathParser.deepCopyNodes(startPathData);
+            if (mPathData == null || !mPathData.canMorph(startPathData)) {
+                mPathData = new PathData(startPathData);
             }
 
-            for (int i = 0; i < startPathData.length; i++) {
-                mNodeArray[i].interpolatePathDataNode(startPathData[i],
-                        endPathData[i], fraction);
-            }
+            mPathData.interpolate(startPathData, endPathData, fraction);
 
-            return mNodeArray;
+            return mPathData;
         }
     }
 
@@ -317,23 +314,23 @@ public class AnimatorInflater {
         TypeEvaluator evaluator = null;
         String fromString = arrayAnimator.getString(R.styleable.Animator_valueFrom);
         String toString = arrayAnimator.getString(R.styleable.Animator_valueTo);
-        PathParser.PathDataNode[] nodesFrom = PathParser.createNodesFromPathData(fromString);
-        PathParser.PathDataNode[] nodesTo = PathParser.createNodesFromPathData(toString);
+        PathData pathDataFrom = PathDataCache.obtain(fromString);
+        PathData pathDataTo = PathDataCache.obtain(toString);
 
-        if (nodesFrom != null) {
-            if (nodesTo != null) {
-                anim.setObjectValues(nodesFrom, nodesTo);
-                if (!PathParser.canMorph(nodesFrom, nodesTo)) {
+        if (pathDataFrom != null) {
+            if (pathDataTo != null) {
+                anim.setObjectValues(pathDataFrom, pathDataTo);
+                if (!pathDataFrom.canMorph(pathDataTo)) {
                     throw new InflateException(arrayAnimator.getPositionDescription()
                             + " Can't morph from " + fromString + " to " + toString);
                 }
             } else {
-                anim.setObjectValues((Object)nodesFrom);
+                anim.setObjectValues(pathDataFrom);
             }
-            evaluator = new PathDataEvaluator(PathParser.deepCopyNodes(nodesFrom));
-        } else if (nodesTo != null) {
-            anim.setObjectValues((Object)nodesTo);
-            evaluator = new PathDataEvaluator(PathParser.deepCopyNodes(nodesTo));
+            evaluator = new PathDataEvaluator(new PathData(pathDataFrom));
+        } else if (pathDataTo != null) {
+            anim.setObjectValues(pathDataTo);
+            evaluator = new PathDataEvaluator(new PathData(pathDataTo));
         }
 
         if (DBG_ANIMATOR_INFLATER && evaluator != null) {
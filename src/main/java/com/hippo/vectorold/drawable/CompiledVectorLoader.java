@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.drawable;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.content.res.Resources;
+import android.util.Log;
+
+import com.hippo.vectorold.util.PathData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Loads vector drawables compiled by <code>vectorold-compiler.gradle</code>.
+ * The compiled file contains the pre-parsed group tree, so no xml or
+ * pathData string is parsed at runtime.
+ * <p/>
+ * The format, all in big endian:
+ * <pre>
+ * int      magic "VOLD"
+ * int      version
+ * int      string count, then for each: short byte length, utf-8 bytes
+ * vector   name, width, width unit, height, height unit, viewport width,
+ *          viewport height, alpha, auto mirrored, tint, tint mode
+ * nodes    tag byte followed by the attributes of the node,
+ *          until TAG_END
+ * </pre>
+ * Path data is stored as command count, param count, commands padded to
+ * 4 bytes, offsets and params, the same layout as {@link PathData}.
+ */
+public final class CompiledVectorLoader {
+    private static final String LOGTAG = CompiledVectorLoader.class.getSimpleName();
+
+    public static final String ASSET_DIR = "vectorold";
+    public static final String EXTENSION = ".vec";
+
+    static final int MAGIC = 0x564F4C44;
+    static final int VERSION = 1;
+
+    static final byte TAG_END = 0;
+    static final byte TAG_GROUP_START = 1;
+    static final byte TAG_GROUP_END = 2;
+    static final byte TAG_PATH = 3;
+    static final byte TAG_CLIP_PATH = 4;
+
+    static final int NO_INDEX = -1;
+
+    private CompiledVectorLoader() {
+    }
+
+    /**
+     * @param resources the resources used to resolve dimensions
+     * @param name the name of the drawable file without extension
+     * @return the VectorDrawable, or null if it can't be loaded
+     */
+    public static VectorDrawable load(Resources resources, String name) {
+        try {
+            final ByteBuffer buffer = map(resources.getAssets(),
+                    ASSET_DIR + "/" + name + EXTENSION);
+            final VectorDrawable drawable = new VectorDrawable();
+            drawable.inflate(resources, buffer);
+            return drawable;
+        } catch (IOException e) {
+            Log.e(LOGTAG, "load error", e);
+        } catch (RuntimeException e) {
+            // BufferUnderflowException or bad data
+            Log.e(LOGTAG, "load error", e);
+        }
+        return null;
+    }
+
+    /**
+     * Map the asset to memory. It only works if the asset is stored
+     * without compression, otherwise the asset is read to a heap buffer.
+     */
+    static ByteBuffer map(AssetManager assets, String path) throws IOException {
+        final AssetFileDescriptor afd;
+        try {
+            afd = assets.openFd(path);
+        } catch (FileNotFoundException e) {
+            // Compressed asset
+            return read(assets.open(path));
+        }
+
+        FileInputStream fis = null;
+        try {
+            fis = afd.createInputStream();
+            final FileChannel channel = fis.getChannel();
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY,
+                    afd.getStartOffset(), afd.getLength());
+        } finally {
+            if (fis != null) {
+                fis.close();
+            }
+            afd.close();
+        }
+    }
+
+    private static ByteBuffer read(InputStream is) throws IOException {
+        try {
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                os.write(buffer, 0, n);
+            }
+            return ByteBuffer.wrap(os.toByteArray());
+        } finally {
+            is.close();
+        }
+    }
+
+    static String[] readStringTable(ByteBuffer buffer) throws IOException {
+        final int count = buffer.getInt();
+        if (count < 0) {
+            throw new IOException("Invalid string count " + count);
+        }
+        final String[] strings = new String[count];
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < count; i++) {
+            final int length = buffer.getShort() & 0xFFFF;
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            buffer.get(bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, "UTF-8");
+        }
+        return strings;
+    }
+
+    static String readString(ByteBuffer buffer, String[] strings) {
+        final int index = buffer.getInt();
+        return index == NO_INDEX ? null : strings[index];
+    }
+
+    static PathData readPathData(ByteBuffer buffer) {
+        final int commandCount = buffer.getInt();
+        if (commandCount < 0) {
+            return null;
+        }
+        final int paramCount = buffer.getInt();
+
+        final byte[] commands = new byte[commandCount];
+        buffer.get(commands);
+        // Commands are padded to 4 bytes
+        buffer.position(buffer.position() + ((4 - (commandCount & 3)) & 3));
+
+        final int[] offsets = new int[commandCount + 1];
+        buffer.asIntBuffer().get(offsets);
+        buffer.position(buffer.position() + offsets.length * 4);
+
+        final float[] params = new float[paramCount];
+        buffer.asFloatBuffer().get(params);
+        buffer.position(buffer.position() + params.length * 4);
+
+        return PathData.create(commands, offsets, params);
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.drawable;
+
+import android.graphics.Bitmap;
+import android.support.v4.util.LruCache;
+
+/**
+ * A process-wide LRU cache of rendered static vectors, keyed by the content
+ * of the vector and the size and config of the bitmap. Different
+ * VectorDrawable instances of the same vector, including mutated copies,
+ * share the bitmaps instead of rendering their own. It is disabled until
+ * {@link #setMaxBytes(int)} is called, then each VectorDrawable keeps its
+ * own single bitmap.
+ * <p/>
+ * Tint, tint mode, auto mirroring and alpha are applied when the bitmap is
+ * drawn, so they are not a part of the key and do not cost extra bitmaps.
+ */
+public final class VectorBitmapCache {
+
+    private static final Object sLock = new Object();
+    private static LruCache<Key, Bitmap> sCache;
+    private static int sHitCount;
+    private static int sMissCount;
+
+    private VectorBitmapCache() {
+    }
+
+    /**
+     * Set the memory budget of the cache, or 0 to disable it.
+     * The entries in the cache are dropped.
+     *
+     * @param maxBytes the max size of the cache in bytes
+     */
+    public static void setMaxBytes(int maxBytes) {
+        synchronized (sLock) {
+            if (maxBytes <= 0) {
+                sCache = null;
+            } else {
+                sCache = new LruCache<Key, Bitmap>(maxBytes) {
+                    @Override
+                    protected int sizeOf(Key key, Bitmap value) {
+                        return value.getByteCount();
+                    }
+                };
+            }
+        }
+    }
+
+    static boolean isEnabled() {
+        synchronized (sLock) {
+            return sCache != null;
+        }
+    }
+
+    /**
+     * @param token identifies the content of the vector
+     * @return the bitmap, or null if it is not in the cache
+     */
+    static Bitmap get(Object token, int width, int height, Bitmap.Config config) {
+        final LruCache<Key, Bitmap> cache;
+        synchronized (sLock) {
+            cache = sCache;
+        }
+        if (cache == null) {
+            return null;
+        }
+
+        final Bitmap bitmap = cache.get(new Key(token, width, height, config));
+        synchronized (sLock) {
+            if (bitmap != null) {
+                sHitCount++;
+            } else {
+                sMissCount++;
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Like {@link #get(Object, int, int, Bitmap.Config)}, but the hit and
+     * miss counters are not touched.
+     */
+    static boolean contains(Object token, int width, int height, Bitmap.Config config) {
+        final LruCache<Key, Bitmap> cache;
+        synchronized (sLock) {
+            cache = sCache;
+        }
+        return cache != null && cache.get(new Key(token, width, height, config)) != null;
+    }
+
+    /**
+     * The bitmap must not be modified once it is put. It is safe to put
+     * from any thread, the bitmap is published to the other threads.
+     */
+    static void put(Object token, Bitmap bitmap) {
+        final LruCache<Key, Bitmap> cache;
+        synchronized (sLock) {
+            cache = sCache;
+        }
+        if (cache != null) {
+            cache.put(new Key(token, bitmap.getWidth(), bitmap.getHeight(),
+                    bitmap.getConfig()), bitmap);
+        }
+    }
+
+    /**
+     * Drop all the entries and reset the counters. The bitmaps are not
+     * recycled, drawables may still be drawing them.
+     */
+    public static void clear() {
+        synchronized (sLock) {
+            if (sCache != null) {
+                sCache.evictAll();
+            }
+            sHitCount = 0;
+            sMissCount = 0;
+        }
+    }
+
+    public static int getHitCount() {
+        synchronized (sLock) {
+            return sHitCount;
+        }
+    }
+
+    public static int getMissCount() {
+        synchronized (sLock) {
+            return sMissCount;
+        }
+    }
+
+    /**
+     * @return the size of the entries in bytes
+     */
+    public static int getSize() {
+        synchronized (sLock) {
+            return sCache != null ? sCache.size() : 0;
+        }
+    }
+
+    private static final class Key {
+        private final Object mToken;
+        private final int mWidth;
+        private final int mHeight;
+        private final Bitmap.Config mConfig;
+
+        Key(Object token, int width, int height, Bitmap.Config config) {
+            mToken = token;
+            mWidth = width;
+            mHeight = height;
+            mConfig = config;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return mToken == key.mToken && mWidth == key.mWidth && mHeight == key.mHeight
+                    && mConfig == key.mConfig;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(mToken);
+            result = 31 * result + mWidth;
+            result = 31 * result + mHeight;
+            result = 31 * result + mConfig.hashCode();
+            return result;
+        }
+    }
+}
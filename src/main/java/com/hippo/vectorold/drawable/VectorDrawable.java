@@ -25,28 +25,40 @@ import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.PathMeasure;
+import android.graphics.Picture;
 import android.graphics.PixelFormat;
 import android.graphics.PorterDuff.Mode;
 import android.graphics.PorterDuffColorFilter;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.Region;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.support.annotation.NonNull;
 import android.support.v4.util.ArrayMap;
 import android.util.AttributeSet;
+import android.util.DisplayMetrics;
 import android.util.Log;
+import android.util.TypedValue;
 import android.util.Xml;
 
 import com.hippo.vectorold.R;
+import com.hippo.vectorold.util.BitmapPool;
+import com.hippo.vectorold.util.BoundsPathSink;
 import com.hippo.vectorold.util.DrawableUtils;
-import com.hippo.vectorold.util.PathParser;
+import com.hippo.vectorold.util.PathData;
+import com.hippo.vectorold.util.PathDataCache;
+import com.hippo.vectorold.util.SimplifyingPathSink;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Stack;
+import java.util.concurrent.Executor;
 
 /**
  * This lets you create a drawable based on an XML vector graphic. It can be
@@ -198,6 +210,25 @@ public class VectorDrawable extends Drawable {
 
     private static final boolean DBG_VECTOR_DRAWABLE = false;
 
+    // Replaying a Picture renders all the paths again, vectors with more
+    // path parameters than this are cached as bitmaps
+    private static final int PICTURE_MAX_PARAMS = 1000;
+
+    private static volatile boolean sNormalizePathData;
+    private static volatile boolean sMergePaths;
+    private static volatile BitmapPool sBitmapPool;
+    private static volatile boolean sUseAlphaMask;
+    private static volatile boolean sAllowRgb565;
+    private static volatile boolean sUseLayers;
+    private static volatile boolean sUseCanvasMatrix;
+    private static volatile boolean sUseCulling;
+    private static volatile float sLodMinPathSize;
+    private static volatile float sLodTolerance;
+
+    private static final Object sStatsLock = new Object();
+    private static long sCacheBytesSaved;
+    private static long sCulledPathCount;
+
     private VectorDrawableState mVectorState;
 
     private PorterDuffColorFilter mTintFilter;
@@ -209,6 +240,13 @@ public class VectorDrawable extends Drawable {
     // caching the bitmap by default is allowed.
     private boolean mAllowCaching = true;
 
+    private boolean mUsePicture;
+    // The vector recorded at the size of the viewport, and the color filter
+    // it is recorded with. Each drawable keeps its own, since drawables which
+    // share the state can have different tints.
+    private Picture mPicture;
+    private ColorFilter mPictureFilter;
+
     public VectorDrawable() {
         mVectorState = new VectorDrawableState();
     }
@@ -227,8 +265,275 @@ public class VectorDrawable extends Drawable {
         return this;
     }
 
+    /**
+     * Build paths from normalized path data, see {@link PathData#normalize()}.
+     * It takes some memory for each path, but relative commands, smooth curves
+     * and arcs are no longer resolved every time a path is rebuilt, which is
+     * every frame of an animation. Paths which are morphing are not normalized.
+     * Disabled by default.
+     *
+     * @param normalize true to normalize path data
+     */
+    public static void setNormalizePathData(boolean normalize) {
+        sNormalizePathData = normalize;
+    }
+
+    /**
+     * Merge runs of sibling paths which have no name, are only filled, with
+     * the same opaque color, and do not overlap, into one path when a
+     * vector is inflated. Nothing can animate them, and each of them costs
+     * a draw call. Paths whose bounds intersect are never merged, so fill
+     * rules and the draw order give the same result. Disabled by default.
+     *
+     * @param mergePaths true to merge paths when inflating
+     */
+    public static void setMergePaths(boolean mergePaths) {
+        sMergePaths = mergePaths;
+    }
+
+    /**
+     * Set the pool which the cache bitmaps are borrowed from and returned
+     * to when the size of a VectorDrawable changes. Call
+     * {@link BitmapPool#trimMemory(int)} from
+     * {@link android.content.ComponentCallbacks2#onTrimMemory(int)} to
+     * release it.
+     * <p/>
+     * Only the bitmaps of drawables which don't share their constant state
+     * are returned to the pool, see {@link #mutate()}. Another drawable could
+     * still draw the bitmaps of a shared state.
+     *
+     * @param pool the pool, or null to always allocate new bitmaps
+     */
+    public static void setBitmapPool(BitmapPool pool) {
+        sBitmapPool = pool;
+    }
+
+    /**
+     * Cache vectors drawn in a single color as {@link Bitmap.Config#ALPHA_8}
+     * masks, and apply the color, alpha and tint when drawing the mask. It
+     * takes a quarter of the memory of ARGB_8888 and looks the same.
+     * Disabled by default.
+     *
+     * @param useAlphaMask true to cache single color vectors as masks
+     */
+    public static void setUseAlphaMask(boolean useAlphaMask) {
+        sUseAlphaMask = useAlphaMask;
+    }
+
+    /**
+     * Cache vectors which are fully opaque as {@link Bitmap.Config#RGB_565}.
+     * A vector is fully opaque if the first thing it draws is an opaque
+     * rectangle which covers the whole viewport. It takes half of the memory
+     * of ARGB_8888, but colors lose precision, so it is disabled by default.
+     *
+     * @param allowRgb565 true to cache opaque vectors as RGB_565
+     */
+    public static void setAllowRgb565(boolean allowRgb565) {
+        sAllowRgb565 = allowRgb565;
+    }
+
+    /**
+     * Draw the parts of an AnimatedVectorDrawable which are not animated
+     * from bitmaps. The children of the root which contain no animated
+     * group or path are rendered once into a bitmap for each run of them,
+     * and only the animated children are drawn every frame. It takes a
+     * bitmap of the size of the drawable for each run, and the bitmaps are
+     * drawn at that size, so they look blurry if the canvas is scaled up.
+     * It is not used if the vector has any clip path. Disabled by default.
+     *
+     * @param useLayers true to draw static parts from bitmaps
+     */
+    public static void setUseLayers(boolean useLayers) {
+        sUseLayers = useLayers;
+    }
+
+    /**
+     * Draw the paths with the matrices of their groups concatenated to the
+     * canvas, instead of transforming a copy of each path whenever a matrix
+     * changes. It saves the copies and the CPU time of animated groups.
+     * Stroke widths are compensated for the scale of the groups, but a
+     * stroke in a group with a non-uniform scale or a skew gets the shape of
+     * the transform, as it does in a Picture. Disabled by default.
+     *
+     * @param useCanvasMatrix true to transform paths with the canvas matrix
+     */
+    public static void setUseCanvasMatrix(boolean useCanvasMatrix) {
+        sUseCanvasMatrix = useCanvasMatrix;
+    }
+
+    /**
+     * Skip the paths which are entirely outside of the clip of the canvas,
+     * including the clip paths of the vector. The bounds of each path are
+     * kept and only computed again when the path, its paint or the matrix of
+     * its group changes. It helps large vectors which are panned and zoomed
+     * in a view, but costs some time for the ones which are always drawn
+     * whole. Disabled by default.
+     *
+     * @param useCulling true to skip the paths outside of the clip
+     */
+    public static void setUseCulling(boolean useCulling) {
+        sUseCulling = useCulling;
+    }
+
+    /**
+     * Render small vectors with less detail. Paths smaller than
+     * <code>minPathSize</code> pixels on the canvas are skipped. Paths
+     * are drawn from simplified copies whose curves are flattened into lines
+     * and whose points are reduced, never further than
+     * <code>tolerance</code> pixels from the original. A copy is made for
+     * each power of two of the scale of its group, and made again only when
+     * the path changes or the scale crosses a power of two. Morphing and
+     * trimmed paths are never simplified. It makes thumbnails of complex
+     * vectors faster to render. Both are 0, disabled, by default.
+     *
+     * @param minPathSize the size in pixels below which paths are skipped,
+     *                    or 0 to draw all of them
+     * @param tolerance the max distance in pixels of a simplified path from
+     *                  the original, or 0 to draw the original paths
+     */
+    public static void setLevelOfDetail(float minPathSize, float tolerance) {
+        sLodMinPathSize = minPathSize;
+        sLodTolerance = tolerance;
+    }
+
+    /**
+     * @return the total bytes saved by allocating cache bitmaps in a smaller
+     * config than ARGB_8888. Each bitmap is counted once, when it is
+     * allocated, reusing it from the pool is not counted again.
+     */
+    public static long getCacheBytesSaved() {
+        synchronized (sStatsLock) {
+            return sCacheBytesSaved;
+        }
+    }
+
+    /**
+     * @return the total number of paths which were not drawn because they
+     * are outside of the clip, see {@link #setUseCulling(boolean)}. Paths
+     * which draw nothing or are too small, see
+     * {@link #setLevelOfDetail(float, float)}, are not counted.
+     */
+    public static long getCulledPathCount() {
+        synchronized (sStatsLock) {
+            return sCulledPathCount;
+        }
+    }
+
+    /**
+     * @return the config of the cache bitmap, or null if there is no cache
+     * bitmap yet
+     */
+    public Bitmap.Config getCacheBitmapConfig() {
+        final Bitmap bitmap = mVectorState.mCachedBitmap;
+        return bitmap != null ? bitmap.getConfig() : null;
+    }
+
+    /**
+     * Draw the vector in the rect (0, 0, width, height) with the context,
+     * ignoring the bounds. Nothing is cached, the paths are drawn directly.
+     * <p/>
+     * Several threads can draw this drawable, or the drawables sharing its
+     * constant state, at the same time without copying it, each with its
+     * own {@link RenderContext}. The vector must not be modified meanwhile,
+     * by setters or animators.
+     *
+     * @param canvas the canvas to draw into
+     * @param width the width in pixels
+     * @param height the height in pixels
+     * @param context the scratch state of the current thread
+     */
+    public void draw(Canvas canvas, int width, int height, RenderContext context) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        final VPathRenderer renderer = mVectorState.mVPathRenderer;
+        renderer.prepareForConcurrentDraw();
+
+        final int saveCount = canvas.save();
+        if (needMirroring()) {
+            canvas.translate(width, 0);
+            canvas.scale(-1.0f, 1.0f);
+        }
+        if (mVectorState.hasTranslucentRoot()) {
+            canvas.saveLayerAlpha(0, 0, width, height, renderer.getRootAlpha(),
+                    Canvas.ALL_SAVE_FLAG);
+        }
+
+        // Color filters always override tint filters.
+        final ColorFilter colorFilter = mColorFilter == null ? mTintFilter : mColorFilter;
+        renderer.draw(canvas, width, height, colorFilter, context);
+
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * Render the bitmap of the size on the executor ahead of time and put it
+     * to {@link VectorBitmapCache}, so the first draw at that size only draws
+     * the bitmap. The executor draws with its own {@link RenderContext}, so
+     * the drawable can still be drawn meanwhile.
+     * <p/>
+     * It does nothing if VectorBitmapCache is disabled, the bitmap is
+     * already in the cache, or the drawable doesn't cache bitmaps, like the
+     * ones in AnimatedVectorDrawable.
+     *
+     * @param executor runs the rendering
+     * @param width the width of the bounds in pixels
+     * @param height the height of the bounds in pixels
+     * @return true if the rendering is submitted to the executor
+     */
+    public boolean prefetch(Executor executor, final int width, final int height) {
+        if (!mAllowCaching || !VectorBitmapCache.isEnabled() || width <= 0 || height <= 0) {
+            return false;
+        }
+
+        final VectorDrawableState state = mVectorState;
+        final Object token = state.mCacheToken;
+        final Bitmap.Config config = state.getCacheConfig();
+        if (VectorBitmapCache.contains(token, width, height, config)) {
+            return false;
+        }
+
+        final VPathRenderer renderer = state.mVPathRenderer;
+        renderer.prepareForConcurrentDraw();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // It might be drawn or prefetched while waiting
+                if (VectorBitmapCache.contains(token, width, height, config)) {
+                    return;
+                }
+                final Bitmap bitmap = VectorDrawableState.obtainBitmap(width, height, config);
+                renderer.draw(new Canvas(bitmap), width, height, null, new RenderContext());
+                VectorBitmapCache.put(token, bitmap);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Cache the vector as a {@link Picture} recorded at the size of the
+     * viewport instead of a bitmap, and replay it scaled to the bounds. It
+     * takes little memory and doesn't render again when the size changes,
+     * but the paths are rasterized on every draw. Vectors with complex paths
+     * still use bitmaps, and so do hardware accelerated canvases before
+     * Marshmallow, which can't draw pictures. Disabled by default.
+     *
+     * @param usePicture true to cache the vector as a Picture
+     */
+    public void setUsePicture(boolean usePicture) {
+        if (mUsePicture != usePicture) {
+            mUsePicture = usePicture;
+            if (!usePicture) {
+                mPicture = null;
+                mPictureFilter = null;
+            }
+            invalidateSelf();
+        }
+    }
+
     Object getTargetByName(String name) {
-        return mVectorState.mVPathRenderer.mVGTargetsMap.get(name);
+        return mVectorState.mVPathRenderer.getTarget(name);
     }
 
     @Override
@@ -262,11 +567,24 @@ public class VectorDrawable extends Drawable {
             if (!mVectorState.hasTranslucentRoot()) {
                 mVectorState.mVPathRenderer.draw(
                         canvas, bounds.width(), bounds.height(), colorFilter);
+                // The changes since the last update of the bitmap are unknown now
+                mVectorState.mCacheDirty = true;
             } else {
                 mVectorState.createCachedBitmapIfNeeded(bounds);
-                mVectorState.updateCachedBitmap(bounds);
+                mVectorState.updateCachedBitmapChanges(bounds);
                 mVectorState.drawCachedBitmapWithRootAlpha(canvas, colorFilter);
             }
+        } else if (mUsePicture && mVectorState.canDrawPicture(canvas)) {
+            // Static Vector Drawable case, the picture is scaled to the bounds.
+            if (mPicture == null || mPictureFilter != colorFilter) {
+                mPicture = mVectorState.recordPicture(colorFilter);
+                mPictureFilter = colorFilter;
+            }
+            mVectorState.drawPicture(canvas, bounds, mPicture);
+        } else if (VectorBitmapCache.isEnabled()) {
+            // Static Vector Drawable case, the bitmap is shared with other instances.
+            mVectorState.obtainSharedBitmap(bounds);
+            mVectorState.drawCachedBitmapWithRootAlpha(canvas, colorFilter);
         } else {
             // Static Vector Drawable case.
             mVectorState.createCachedBitmapIfNeeded(bounds);
@@ -533,6 +851,10 @@ public class VectorDrawable extends Drawable {
             eventType = parser.next();
         }
 
+        if (sMergePaths) {
+            mergePaths(pathRenderer.mRootGroup, new BoundsPathSink());
+        }
+
         // Print the tree out for debug.
         if (DBG_VECTOR_DRAWABLE) {
             printGroupTree(pathRenderer.mRootGroup, 0);
@@ -550,6 +872,202 @@ public class VectorDrawable extends Drawable {
         }
     }
 
+    /**
+     * Inflate from the compiled format of {@link CompiledVectorLoader}.
+     */
+    void inflate(Resources res, ByteBuffer buffer) throws IOException {
+        final VectorDrawableState state = mVectorState;
+        final VPathRenderer pathRenderer = new VPathRenderer();
+        state.mVPathRenderer = pathRenderer;
+
+        if (buffer.getInt() != CompiledVectorLoader.MAGIC) {
+            throw new IOException("Not a compiled vector");
+        }
+        final int version = buffer.getInt();
+        if (version != CompiledVectorLoader.VERSION) {
+            throw new IOException("Unsupported compiled vector version " + version);
+        }
+
+        final String[] strings = CompiledVectorLoader.readStringTable(buffer);
+        updateStateFromBuffer(res, buffer, strings);
+
+        state.mCacheDirty = true;
+        inflateInternal(buffer, strings);
+
+        mTintFilter = DrawableUtils.updateTintFilter(this, mTintFilter, state.mTint, state.mTintMode);
+    }
+
+    private void updateStateFromBuffer(Resources res, ByteBuffer buffer, String[] strings)
+            throws IOException {
+        final VectorDrawableState state = mVectorState;
+        final VPathRenderer pathRenderer = state.mVPathRenderer;
+        final DisplayMetrics metrics = res.getDisplayMetrics();
+
+        final String name = CompiledVectorLoader.readString(buffer, strings);
+        final float width = buffer.getFloat();
+        final int widthUnit = buffer.get();
+        final float height = buffer.getFloat();
+        final int heightUnit = buffer.get();
+        pathRenderer.mBaseWidth = TypedValue.applyDimension(widthUnit, width, metrics);
+        pathRenderer.mBaseHeight = TypedValue.applyDimension(heightUnit, height, metrics);
+        pathRenderer.mViewportWidth = buffer.getFloat();
+        pathRenderer.mViewportHeight = buffer.getFloat();
+        pathRenderer.setAlpha(buffer.getFloat());
+        state.mAutoMirrored = buffer.get() != 0;
+        final boolean hasTint = buffer.get() != 0;
+        final int tint = buffer.getInt();
+        if (hasTint) {
+            state.mTint = ColorStateList.valueOf(tint);
+        }
+        final int tintMode = buffer.getInt();
+        if (tintMode != -1) {
+            state.mTintMode = DrawableUtils.parseTintMode(tintMode, Mode.SRC_IN);
+        }
+
+        if (pathRenderer.mViewportWidth <= 0 || pathRenderer.mViewportHeight <= 0
+                || pathRenderer.mBaseWidth <= 0 || pathRenderer.mBaseHeight <= 0) {
+            throw new IOException("Invalid size of compiled vector");
+        }
+
+        if (name != null) {
+            pathRenderer.mRootName = name;
+            pathRenderer.mVGTargetsMap.put(name, pathRenderer);
+        }
+    }
+
+    private void inflateInternal(ByteBuffer buffer, String[] strings) throws IOException {
+        final VPathRenderer pathRenderer = mVectorState.mVPathRenderer;
+        boolean noPathTag = true;
+
+        final Stack<VGroup> groupStack = new Stack<VGroup>();
+        groupStack.push(pathRenderer.mRootGroup);
+
+        byte tag;
+        while ((tag = buffer.get()) != CompiledVectorLoader.TAG_END) {
+            final VGroup currentGroup = groupStack.peek();
+            switch (tag) {
+                case CompiledVectorLoader.TAG_PATH: {
+                    final VFullPath path = new VFullPath();
+                    path.read(buffer, strings);
+                    currentGroup.mChildren.add(path);
+                    if (path.getPathName() != null) {
+                        pathRenderer.mVGTargetsMap.put(path.getPathName(), path);
+                    }
+                    noPathTag = false;
+                    break;
+                }
+                case CompiledVectorLoader.TAG_CLIP_PATH: {
+                    final VClipPath path = new VClipPath();
+                    path.read(buffer, strings);
+                    currentGroup.mChildren.add(path);
+                    if (path.getPathName() != null) {
+                        pathRenderer.mVGTargetsMap.put(path.getPathName(), path);
+                    }
+                    break;
+                }
+                case CompiledVectorLoader.TAG_GROUP_START: {
+                    final VGroup newChildGroup = new VGroup();
+                    newChildGroup.read(buffer, strings);
+                    currentGroup.mChildren.add(newChildGroup);
+                    groupStack.push(newChildGroup);
+                    if (newChildGroup.getGroupName() != null) {
+                        pathRenderer.mVGTargetsMap.put(newChildGroup.getGroupName(),
+                                newChildGroup);
+                    }
+                    break;
+                }
+                case CompiledVectorLoader.TAG_GROUP_END:
+                    if (groupStack.size() == 1) {
+                        throw new IOException("Unbalanced group in compiled vector");
+                    }
+                    groupStack.pop();
+                    break;
+                default:
+                    throw new IOException("Unknown tag " + tag + " in compiled vector");
+            }
+        }
+
+        if (noPathTag) {
+            throw new IOException("no " + SHAPE_PATH + " defined");
+        }
+
+        if (sMergePaths) {
+            mergePaths(pathRenderer.mRootGroup, new BoundsPathSink());
+        }
+    }
+
+    /**
+     * Replace the runs of mergeable sibling paths in the group and its
+     * children with one path each.
+     */
+    private static void mergePaths(VGroup group, BoundsPathSink boundsSink) {
+        final ArrayList<Object> children = group.mChildren;
+        final ArrayList<Object> merged = new ArrayList<Object>(children.size());
+        final ArrayList<VFullPath> run = new ArrayList<VFullPath>();
+        final ArrayList<RectF> runBounds = new ArrayList<RectF>();
+        for (int i = 0, n = children.size(); i < n; i++) {
+            final Object child = children.get(i);
+            if (child instanceof VGroup) {
+                mergePaths((VGroup) child, boundsSink);
+            }
+
+            RectF bounds = null;
+            if (child instanceof VFullPath && ((VFullPath) child).canMerge()) {
+                final VFullPath path = (VFullPath) child;
+                bounds = new RectF();
+                boundsSink.reset();
+                path.mPathData.visit(boundsSink);
+                boundsSink.getBounds(bounds);
+                if (!run.isEmpty() && !run.get(0).hasSamePaint(path)) {
+                    flushMergeRun(run, runBounds, merged);
+                }
+                for (int j = 0, m = runBounds.size(); j < m; j++) {
+                    // Touching bounds don't intersect, opaque shapes which
+                    // share an edge only lose the seam between them
+                    if (RectF.intersects(runBounds.get(j), bounds)) {
+                        flushMergeRun(run, runBounds, merged);
+                        break;
+                    }
+                }
+            }
+
+            if (bounds != null) {
+                run.add((VFullPath) child);
+                runBounds.add(bounds);
+            } else {
+                flushMergeRun(run, runBounds, merged);
+                merged.add(child);
+            }
+        }
+        flushMergeRun(run, runBounds, merged);
+
+        if (merged.size() != children.size()) {
+            children.clear();
+            children.addAll(merged);
+        }
+    }
+
+    private static void flushMergeRun(ArrayList<VFullPath> run, ArrayList<RectF> runBounds,
+            ArrayList<Object> merged) {
+        final int count = run.size();
+        if (count == 1) {
+            merged.add(run.get(0));
+        } else if (count > 1) {
+            final PathData[] parts = new PathData[count];
+            final VFullPath path = new VFullPath(run.get(0));
+            for (int i = 0; i < count; i++) {
+                final VFullPath part = run.get(i);
+                parts[i] = part.mPathData.normalize();
+                path.mChangingConfigurations |= part.mChangingConfigurations;
+            }
+            path.mPathData = PathData.concat(parts);
+            path.invalidatePath();
+            merged.add(path);
+        }
+        run.clear();
+        runBounds.clear();
+    }
+
     private void printGroupTree(VGroup currentGroup, int level) {
         String indent = "";
         for (int i = 0; i < level; i++) {
@@ -575,6 +1093,12 @@ public class VectorDrawable extends Drawable {
 
     void setAllowCaching(boolean allowCaching) {
         mAllowCaching = allowCaching;
+        if (!allowCaching) {
+            // The content will be animated, it is no longer the same as
+            // the state it is copied from
+            mVectorState.mCacheToken = new Object();
+        }
+        mVectorState.mVPathRenderer.setUseLayers(!allowCaching);
     }
 
     private boolean needMirroring() {
@@ -602,35 +1126,50 @@ public class VectorDrawable extends Drawable {
         boolean mAutoMirrored;
 
         Bitmap mCachedBitmap;
-        ColorStateList mCachedTint;
-        Mode mCachedTintMode;
-        int mCachedRootAlpha;
-        boolean mCachedAutoMirrored;
+        // mCachedBitmap comes from VectorBitmapCache, it must not be modified
+        boolean mCachedBitmapShared;
+        // The color of mCachedBitmap if it is an ALPHA_8 mask
+        int mCachedMaskColor;
+        // Identifies the rendered content in VectorBitmapCache. Mutated copies
+        // keep it, since tint, alpha and mirroring are applied when drawing the
+        // bitmap, and the tree is only changed by animations.
+        Object mCacheToken = new Object();
         boolean mCacheDirty;
 
         /** Temporary paint object used to draw cached bitmaps. */
         Paint mTempPaint;
 
+        // The total count of path parameters, -1 if it isn't counted yet
+        int mPathParamCount = -1;
+
+        // Whether newDrawable() was called. The bitmaps of a shared state may
+        // still be in the display list of another drawable, so they are never
+        // returned to the pool.
+        boolean mShared;
+
         // Deep copy for mutate() or implicitly mutate.
         public VectorDrawableState(VectorDrawableState copy) {
             if (copy != null) {
                 mChangingConfigurations = copy.mChangingConfigurations;
                 mVPathRenderer = new VPathRenderer(copy.mVPathRenderer);
-                if (copy.mVPathRenderer.mFillPaint != null) {
-                    mVPathRenderer.mFillPaint = new Paint(copy.mVPathRenderer.mFillPaint);
-                }
-                if (copy.mVPathRenderer.mStrokePaint != null) {
-                    mVPathRenderer.mStrokePaint = new Paint(copy.mVPathRenderer.mStrokePaint);
-                }
                 mTint = copy.mTint;
                 mTintMode = copy.mTintMode;
                 mAutoMirrored = copy.mAutoMirrored;
+                mCacheToken = copy.mCacheToken;
             }
         }
 
         public void drawCachedBitmapWithRootAlpha(Canvas canvas, ColorFilter filter) {
             // The bitmap's size is the same as the bounds.
-            final Paint p = getPaint(filter);
+            final Paint p;
+            if (mCachedBitmap.getConfig() == Bitmap.Config.ALPHA_8) {
+                // The mask takes the color of the paint
+                p = getPaint(filter, true);
+                p.setColor(mCachedMaskColor);
+                p.setAlpha(mVPathRenderer.getRootAlpha());
+            } else {
+                p = getPaint(filter, false);
+            }
             canvas.drawBitmap(mCachedBitmap, 0, 0, p);
         }
 
@@ -639,10 +1178,10 @@ public class VectorDrawable extends Drawable {
         }
 
         /**
-         * @return null when there is no need for alpha paint.
+         * @return null when there is no need for alpha paint and it's not forced.
          */
-        public Paint getPaint(ColorFilter filter) {
-            if (!hasTranslucentRoot() && filter == null) {
+        public Paint getPaint(ColorFilter filter, boolean force) {
+            if (!force && !hasTranslucentRoot() && filter == null) {
                 return null;
             }
 
@@ -655,48 +1194,192 @@ public class VectorDrawable extends Drawable {
             return mTempPaint;
         }
 
+        /**
+         * @return false if the canvas can't draw pictures, or the vector is
+         * too complex to be rasterized on every draw
+         */
+        public boolean canDrawPicture(Canvas canvas) {
+            if (canvas.isHardwareAccelerated()
+                    && Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                return false;
+            }
+            if (mPathParamCount < 0) {
+                int count = 0;
+                for (VPath path : mVPathRenderer.getDisplayList().mPaths) {
+                    if (path.mPathData != null) {
+                        count += path.mPathData.getParamCount();
+                    }
+                }
+                mPathParamCount = count;
+            }
+            return mPathParamCount <= PICTURE_MAX_PARAMS;
+        }
+
+        /**
+         * Record the vector at the size of the viewport with the filter.
+         */
+        public Picture recordPicture(ColorFilter filter) {
+            final VPathRenderer renderer = mVPathRenderer;
+            // Record at an integer size, the replay scale makes up the rest
+            final int width = (int) Math.ceil(renderer.mViewportWidth);
+            final int height = (int) Math.ceil(renderer.mViewportHeight);
+            final Picture picture = new Picture();
+            // A RenderContext of its own keeps the paths of the UI thread
+            // context at the scale of the bitmaps
+            // The picture is replayed at other scales, so it is recorded
+            // in full detail
+            final RenderContext context = new RenderContext();
+            context.mUseLevelOfDetail = false;
+            renderer.draw(picture.beginRecording(width, height), width, height, filter,
+                    context);
+            picture.endRecording();
+            return picture;
+        }
+
+        /**
+         * Replay the picture from {@link #recordPicture(ColorFilter)} scaled
+         * to the bounds.
+         */
+        public void drawPicture(Canvas canvas, Rect bounds, Picture picture) {
+            final VPathRenderer renderer = mVPathRenderer;
+            final int width = picture.getWidth();
+            final int height = picture.getHeight();
+            if (hasTranslucentRoot()) {
+                canvas.saveLayerAlpha(0, 0, bounds.width(), bounds.height(),
+                        renderer.getRootAlpha(), Canvas.ALL_SAVE_FLAG);
+            }
+            canvas.scale((float) bounds.width() / width, (float) bounds.height() / height);
+            canvas.drawPicture(picture);
+        }
+
         public void updateCachedBitmap(Rect bounds) {
             mCachedBitmap.eraseColor(Color.TRANSPARENT);
             Canvas tmpCanvas = new Canvas(mCachedBitmap);
             mVPathRenderer.draw(tmpCanvas, bounds.width(), bounds.height(), null);
+            mCachedMaskColor = mVPathRenderer.getDisplayList().mMonochromeColor;
+        }
+
+        /**
+         * Like {@link #updateCachedBitmap(Rect)}, but only the area which
+         * changed since the last update is drawn again.
+         */
+        public void updateCachedBitmapChanges(Rect bounds) {
+            Canvas tmpCanvas = new Canvas(mCachedBitmap);
+            mVPathRenderer.drawChanges(tmpCanvas, bounds.width(), bounds.height(), mCacheDirty);
+            mCacheDirty = false;
+            mCachedMaskColor = mVPathRenderer.getDisplayList().mMonochromeColor;
         }
 
         public void createCachedBitmapIfNeeded(Rect bounds) {
-            if (mCachedBitmap == null || !canReuseBitmap(bounds.width(),
-                    bounds.height())) {
-                mCachedBitmap = Bitmap.createBitmap(bounds.width(), bounds.height(),
-                        Bitmap.Config.ARGB_8888);
+            final Bitmap.Config config = getCacheConfig();
+            if (mCachedBitmap == null || mCachedBitmapShared
+                    || !canReuseBitmap(bounds.width(), bounds.height(), config)) {
+                releaseCachedBitmap();
+                mCachedBitmap = obtainBitmap(bounds.width(), bounds.height(), config);
                 mCacheDirty = true;
             }
 
         }
 
-        public boolean canReuseBitmap(int width, int height) {
+        /**
+         * Choose the cheapest config which looks the same as ARGB_8888.
+         * Root alpha, tint and the color filter are applied when the bitmap
+         * is drawn, so only the content of the paths matters.
+         */
+        private Bitmap.Config getCacheConfig() {
+            final DisplayList displayList = mVPathRenderer.getDisplayList();
+            if (sUseAlphaMask && displayList.isMonochrome()) {
+                return Bitmap.Config.ALPHA_8;
+            }
+            if (sAllowRgb565 && displayList.isOpaque(mVPathRenderer.mViewportWidth,
+                    mVPathRenderer.mViewportHeight)) {
+                return Bitmap.Config.RGB_565;
+            }
+            return Bitmap.Config.ARGB_8888;
+        }
+
+        /**
+         * @return a transparent bitmap from the pool, or a new one
+         */
+        private static Bitmap obtainBitmap(int width, int height, Bitmap.Config config) {
+            final BitmapPool pool = sBitmapPool;
+            final Bitmap bitmap = pool != null ? pool.get(width, height, config) : null;
+            if (bitmap == null) {
+                // Bitmaps from the pool were counted when they were created
+                if (config != Bitmap.Config.ARGB_8888) {
+                    final int bytesPerPixel = config == Bitmap.Config.ALPHA_8 ? 1 : 2;
+                    synchronized (sStatsLock) {
+                        sCacheBytesSaved += (long) width * height * (4 - bytesPerPixel);
+                    }
+                }
+                return Bitmap.createBitmap(width, height, config);
+            }
+            bitmap.eraseColor(Color.TRANSPARENT);
+            return bitmap;
+        }
+
+        /**
+         * Return the bitmap to the pool if there is one.
+         */
+        private static void releaseBitmap(Bitmap bitmap) {
+            final BitmapPool pool = sBitmapPool;
+            if (pool != null) {
+                pool.put(bitmap);
+            }
+        }
+
+        /**
+         * Return the bitmap to the pool, unless it or the state is shared.
+         */
+        private void releaseCachedBitmap() {
+            if (mCachedBitmap != null && !mCachedBitmapShared && !mShared) {
+                releaseBitmap(mCachedBitmap);
+            }
+            mCachedBitmap = null;
+            mCachedBitmapShared = false;
+        }
+
+        /**
+         * Get the bitmap of the size from VectorBitmapCache, or render it and
+         * put it to the cache.
+         */
+        public void obtainSharedBitmap(Rect bounds) {
+            final int width = bounds.width();
+            final int height = bounds.height();
+            final Bitmap.Config config = getCacheConfig();
+            if (mCachedBitmap != null && mCachedBitmapShared
+                    && canReuseBitmap(width, height, config)) {
+                return;
+            }
+
+            Bitmap bitmap = VectorBitmapCache.get(mCacheToken, width, height, config);
+            if (bitmap == null) {
+                bitmap = obtainBitmap(width, height, config);
+                mVPathRenderer.draw(new Canvas(bitmap), width, height, null);
+                VectorBitmapCache.put(mCacheToken, bitmap);
+            }
+            releaseCachedBitmap();
+            mCachedBitmap = bitmap;
+            mCachedBitmapShared = true;
+            mCachedMaskColor = mVPathRenderer.getDisplayList().mMonochromeColor;
+        }
+
+        public boolean canReuseBitmap(int width, int height, Bitmap.Config config) {
             if (width == mCachedBitmap.getWidth()
-                    && height == mCachedBitmap.getHeight()) {
+                    && height == mCachedBitmap.getHeight()
+                    && config == mCachedBitmap.getConfig()) {
                 return true;
             }
             return false;
         }
 
         public boolean canReuseCache() {
-            if (!mCacheDirty
-                    && mCachedTint == mTint
-                    && mCachedTintMode == mTintMode
-                    && mCachedAutoMirrored == mAutoMirrored
-                    && mCachedRootAlpha == mVPathRenderer.getRootAlpha()) {
-                return true;
-            }
-            return false;
+            // Tint, root alpha and mirroring are applied when the bitmap is
+            // drawn, so they don't make the cache dirty.
+            return !mCacheDirty;
         }
 
         public void updateCacheStates() {
-            // Use shallow copy here and shallow comparison in canReuseCache(),
-            // likely hit cache miss more, but practically not much difference.
-            mCachedTint = mTint;
-            mCachedTintMode = mTintMode;
-            mCachedRootAlpha = mVPathRenderer.getRootAlpha();
-            mCachedAutoMirrored = mAutoMirrored;
             mCacheDirty = false;
         }
 
@@ -706,14 +1389,21 @@ public class VectorDrawable extends Drawable {
 
         @Override
         public Drawable newDrawable() {
+            markShared();
             return new VectorDrawable(this, null);
         }
 
         @Override
         public Drawable newDrawable(Resources res) {
+            markShared();
             return new VectorDrawable(this, res);
         }
 
+        private void markShared() {
+            mShared = true;
+            mVPathRenderer.mRenderContext.mLayersShared = true;
+        }
+
         @Override
         public int getChangingConfigurations() {
             return mChangingConfigurations;
@@ -735,19 +1425,31 @@ public class VectorDrawable extends Drawable {
          */
         // Variables that only used temporarily inside the draw() call, so there
         // is no need for deep copying.
-        private final Path mPath;
-        private final Path mRenderPath;
         private static final Matrix IDENTITY_MATRIX = new Matrix();
-        private final Matrix mFinalPathMatrix = new Matrix();
-
-        private Paint mStrokePaint;
-        private Paint mFillPaint;
-        private PathMeasure mPathMeasure;
+        private static final float SQRT_2 = (float) Math.sqrt(2);
+        // The scratch state of draw() on the UI thread
+        private final RenderContext mRenderContext = new RenderContext();
+        // Whether draw() uses layers for the static children of the root
+        private boolean mUseLayers;
+
+        // Protects the lazily computed parts of the tree, which can be
+        // shared by several renderers
+        private static final Object sPrepareLock = new Object();
+
+        // The compiled tree, built on the first draw
+        private DisplayList mDisplayList;
+
+        // Whether the whole tree belongs to this renderer. A copy shares the
+        // tree of its source and only copies the nodes on the way to the
+        // targets it gives out, which are the only nodes written to.
+        private boolean mOwnsTree = true;
+        // The nodes copied from the shared tree
+        private ArrayList<Object> mOwnedNodes;
 
         /////////////////////////////////////////////////////
         // Variables below need to be copied (deep copy if applicable) for mutation.
         private int mChangingConfigurations;
-        private final VGroup mRootGroup;
+        private VGroup mRootGroup;
         float mBaseWidth = 0;
         float mBaseHeight = 0;
         float mViewportWidth = 0;
@@ -759,8 +1461,6 @@ public class VectorDrawable extends Drawable {
 
         public VPathRenderer() {
             mRootGroup = new VGroup();
-            mPath = new Path();
-            mRenderPath = new Path();
         }
 
         public void setRootAlpha(int alpha) {
@@ -783,9 +1483,10 @@ public class VectorDrawable extends Drawable {
         }
 
         public VPathRenderer(VPathRenderer copy) {
-            mRootGroup = new VGroup(copy.mRootGroup, mVGTargetsMap);
-            mPath = new Path(copy.mPath);
-            mRenderPath = new Path(copy.mRenderPath);
+            // Share the tree, nodes are copied on demand by getTarget()
+            mRootGroup = copy.mRootGroup;
+            mOwnsTree = false;
+            mOwnedNodes = new ArrayList<Object>();
             mBaseWidth = copy.mBaseWidth;
             mBaseHeight = copy.mBaseHeight;
             mViewportWidth = copy.mViewportWidth;
@@ -798,120 +1499,996 @@ public class VectorDrawable extends Drawable {
             }
         }
 
-        private void drawGroupTree(VGroup currentGroup, Matrix currentMatrix,
-                Canvas canvas, int w, int h, ColorFilter filter) {
-            // Calculate current group's matrix by preConcat the parent's and
-            // and the current one on the top of the stack.
-            // Basically the Mfinal = Mviewport * M0 * M1 * M2;
-            // Mi the local matrix at level i of the group tree.
-            currentGroup.mStackedMatrix.set(currentMatrix);
-
-            currentGroup.mStackedMatrix.preConcat(currentGroup.mLocalMatrix);
-
-            // Draw the group tree in the same order as the XML file.
-            for (int i = 0; i < currentGroup.mChildren.size(); i++) {
-                Object child = currentGroup.mChildren.get(i);
-                if (child instanceof VGroup) {
-                    VGroup childGroup = (VGroup) child;
-                    drawGroupTree(childGroup, currentGroup.mStackedMatrix,
-                            canvas, w, h, filter);
-                } else if (child instanceof VPath) {
-                    VPath childPath = (VPath) child;
-                    drawPath(currentGroup, childPath, canvas, w, h, filter);
-                }
+        DisplayList getDisplayList() {
+            if (mDisplayList == null) {
+                mDisplayList = new DisplayList(mRootGroup, this);
             }
+            return mDisplayList;
         }
 
-        public void draw(Canvas canvas, int w, int h, ColorFilter filter) {
-            // Travese the tree in pre-order to draw.
-            drawGroupTree(mRootGroup, IDENTITY_MATRIX, canvas, w, h, filter);
+        /**
+         * @return true if the node belongs to this renderer, it is not shared
+         * with other renderers and can be modified
+         */
+        boolean isOwned(Object node) {
+            return mOwnsTree || mOwnedNodes.contains(node);
         }
 
-        private void drawPath(VGroup vGroup, VPath vPath, Canvas canvas, int w, int h,
-                ColorFilter filter) {
-            final float scaleX = w / mViewportWidth;
-            final float scaleY = h / mViewportHeight;
-            final float minScale = Math.min(scaleX, scaleY);
+        /**
+         * Get the group or path with the name, or this for the name of the
+         * root. If the tree is shared, the node and its parents are copied
+         * first, so the caller can modify it.
+         */
+        Object getTarget(String name) {
+            Object target = mVGTargetsMap.get(name);
+            if (target == null && !mOwnsTree) {
+                target = copyTarget(name);
+                if (target != null) {
+                    mVGTargetsMap.put(name, target);
+                }
+            }
+            return target;
+        }
 
-            mFinalPathMatrix.set(vGroup.mStackedMatrix);
-            mFinalPathMatrix.postScale(scaleX, scaleY);
+        private Object copyTarget(String name) {
+            final ArrayList<Object> chain = new ArrayList<Object>();
+            if (!findTarget(mRootGroup, name, new ArrayList<Object>(), chain)) {
+                return null;
+            }
 
-            vPath.toPath(mPath);
-            final Path path = mPath;
+            VGroup parent = null;
+            Object owned = null;
+            for (int i = 0, n = chain.size(); i < n; i++) {
+                final Object node = chain.get(i);
+                owned = node;
+                if (!isOwned(node)) {
+                    if (node instanceof VGroup) {
+                        owned = new VGroup((VGroup) node);
+                    } else if (node instanceof VFullPath) {
+                        owned = new VFullPath((VFullPath) node);
+                    } else {
+                        owned = new VClipPath((VClipPath) node);
+                    }
+                    mOwnedNodes.add(owned);
+                    if (parent == null) {
+                        mRootGroup = (VGroup) owned;
+                    } else {
+                        parent.mChildren.set(parent.mChildren.indexOf(node), owned);
+                    }
+                    // The tree changed
+                    mDisplayList = null;
+                }
+                if (owned instanceof VGroup) {
+                    parent = (VGroup) owned;
+                }
+            }
+            return owned;
+        }
+
+        /**
+         * Find the last node with the name in document order, the same one
+         * as inflating puts to mVGTargetsMap.
+         *
+         * @param stack the nodes from the root to the group
+         * @param chain set to the nodes from the root to the target
+         * @return true if it is found
+         */
+        private static boolean findTarget(VGroup group, String name,
+                ArrayList<Object> stack, ArrayList<Object> chain) {
+            boolean found = false;
+            stack.add(group);
+            if (name.equals(group.getGroupName())) {
+                chain.clear();
+                chain.addAll(stack);
+                found = true;
+            }
+            final ArrayList<Object> children = group.mChildren;
+            for (int i = 0, n = children.size(); i < n; i++) {
+                final Object child = children.get(i);
+                if (child instanceof VGroup) {
+                    found |= findTarget((VGroup) child, name, stack, chain);
+                } else if (name.equals(((VPath) child).getPathName())) {
+                    chain.clear();
+                    chain.addAll(stack);
+                    chain.add(child);
+                    found = true;
+                }
+            }
+            stack.remove(stack.size() - 1);
+            return found;
+        }
 
-            mRenderPath.reset();
+        /**
+         * Build everything in the tree which is computed lazily, so that
+         * several threads can read the tree at the same time. Nothing in the
+         * tree is written when drawing with a RenderContext afterwards, until
+         * the tree is modified again.
+         */
+        void prepareForConcurrentDraw() {
+            synchronized (sPrepareLock) {
+                final DisplayList displayList = getDisplayList();
+                displayList.isMonochrome();
+                for (VGroup group : displayList.mGroups) {
+                    group.getLocalMatrix();
+                }
+                for (VPath path : displayList.mPaths) {
+                    path.getSourcePath();
+                }
+            }
+        }
+
+        void setUseLayers(boolean useLayers) {
+            mUseLayers = useLayers;
+            if (!useLayers) {
+                mRenderContext.releaseLayers();
+            }
+        }
 
-            if (vPath.isClipPath()) {
-                mRenderPath.addPath(path, mFinalPathMatrix);
-                canvas.clipPath(mRenderPath, Region.Op.REPLACE);
+        public void draw(Canvas canvas, int w, int h, ColorFilter filter) {
+            if (mUseLayers && sUseLayers) {
+                drawWithLayers(canvas, w, h, filter);
             } else {
-                VFullPath fullPath = (VFullPath) vPath;
-                if (fullPath.mTrimPathStart != 0.0f || fullPath.mTrimPathEnd != 1.0f) {
-                    float start = (fullPath.mTrimPathStart + fullPath.mTrimPathOffset) % 1.0f;
-                    float end = (fullPath.mTrimPathEnd + fullPath.mTrimPathOffset) % 1.0f;
+                draw(canvas, w, h, filter, mRenderContext);
+            }
+        }
 
-                    if (mPathMeasure == null) {
-                        mPathMeasure = new PathMeasure();
-                    }
-                    mPathMeasure.setPath(mPath, false);
-
-                    float len = mPathMeasure.getLength();
-                    start = start * len;
-                    end = end * len;
-                    path.reset();
-                    if (start > end) {
-                        mPathMeasure.getSegment(start, len, path, true);
-                        mPathMeasure.getSegment(0f, end, path, true);
-                    } else {
-                        mPathMeasure.getSegment(start, end, path, true);
+        public void draw(Canvas canvas, int w, int h, ColorFilter filter,
+                RenderContext context) {
+            final DisplayList displayList = getDisplayList();
+            final float scaleX = w / mViewportWidth;
+            final float scaleY = h / mViewportHeight;
+            // The final matrices of all the groups contain the scale
+            final boolean scaleChanged = context.bind(displayList, scaleX, scaleY);
+
+            drawOps(displayList, 0, displayList.mOps.length, canvas, filter,
+                    scaleChanged, context);
+        }
+
+        /**
+         * Draw the static runs of the display list from the layers of the
+         * render context, and the others directly. A layer is only rendered
+         * again when the size or the color filter changes, the static runs
+         * never change.
+         */
+        private void drawWithLayers(Canvas canvas, int w, int h, ColorFilter filter) {
+            final DisplayList displayList = getDisplayList();
+            final RenderContext context = mRenderContext;
+            final boolean scaleChanged = context.bind(displayList,
+                    w / mViewportWidth, h / mViewportHeight);
+            final int[] runStarts = displayList.mStaticRunStarts;
+            final int[] runEnds = displayList.mStaticRunEnds;
+            if (context.mLayers == null) {
+                context.mLayers = new Bitmap[runStarts.length];
+            }
+            final boolean layersValid = !scaleChanged && filter == context.mLayerFilter;
+            context.mLayerFilter = filter;
+
+            int start = 0;
+            for (int run = 0; run < runStarts.length; run++) {
+                drawOps(displayList, start, runStarts[run], canvas, filter,
+                        scaleChanged, context);
+
+                Bitmap layer = context.mLayers[run];
+                if (layer == null || layer.getWidth() != w || layer.getHeight() != h) {
+                    if (layer != null) {
+                        context.releaseLayer(layer);
                     }
-                    path.rLineTo(0, 0); // fix bug in measure
+                    layer = VectorDrawableState.obtainBitmap(w, h, Bitmap.Config.ARGB_8888);
+                    context.mLayers[run] = layer;
+                    drawOps(displayList, runStarts[run], runEnds[run], new Canvas(layer),
+                            filter, scaleChanged, context);
+                } else if (!layersValid) {
+                    layer.eraseColor(Color.TRANSPARENT);
+                    drawOps(displayList, runStarts[run], runEnds[run], new Canvas(layer),
+                            filter, scaleChanged, context);
                 }
-                mRenderPath.addPath(path, mFinalPathMatrix);
+                canvas.drawBitmap(layer, 0, 0, null);
+                start = runEnds[run];
+            }
+            drawOps(displayList, start, displayList.mOps.length, canvas, filter,
+                    scaleChanged, context);
+        }
 
-                if (fullPath.mFillColor != Color.TRANSPARENT) {
-                    if (mFillPaint == null) {
-                        mFillPaint = new Paint();
-                        mFillPaint.setStyle(Paint.Style.FILL);
-                        mFillPaint.setAntiAlias(true);
+        /**
+         * Draw into a canvas which holds the result of the last call. Only
+         * the area covered by the paths which changed since then, before or
+         * after the change, is cleared and drawn again.
+         *
+         * @param full true to clear and draw everything
+         */
+        void drawChanges(Canvas canvas, int w, int h, boolean full) {
+            final DisplayList displayList = getDisplayList();
+            final RenderContext context = mRenderContext;
+            final boolean scaleChanged = context.bind(displayList,
+                    w / mViewportWidth, h / mViewportHeight);
+            final RectF dirty = context.mDirtyBounds;
+            final boolean dirtyValid = collectDirtyBounds(displayList, scaleChanged,
+                    context, dirty);
+
+            // A clip path replaces the clip of the dirty area
+            if (full || !dirtyValid || displayList.mHasClipPath) {
+                canvas.drawColor(Color.TRANSPARENT, Mode.CLEAR);
+                draw(canvas, w, h, null);
+            } else if (!dirty.isEmpty()) {
+                final Rect dirtyRect = context.mDirtyRect;
+                dirty.roundOut(dirtyRect);
+                final int saveCount = canvas.save();
+                canvas.clipRect(dirtyRect);
+                canvas.drawColor(Color.TRANSPARENT, Mode.CLEAR);
+                draw(canvas, w, h, null);
+                canvas.restoreToCount(saveCount);
+            }
+        }
+
+        /**
+         * Update the matrices and the bounds of the paths, and collect the
+         * union of the old and new bounds of the paths which changed.
+         *
+         * @return false if the old bounds are unknown
+         */
+        private static boolean collectDirtyBounds(DisplayList displayList,
+                boolean scaleChanged, RenderContext context, RectF dirty) {
+            final boolean valid = context.mPathBoundsValid && !scaleChanged;
+            final byte[] ops = displayList.mOps;
+            final int[] operands = displayList.mOperands;
+            dirty.setEmpty();
+            for (int i = 0, n = ops.length; i < n; i++) {
+                final int index = operands[i];
+                if (ops[i] == DisplayList.OP_GROUP) {
+                    updateGroupMatrix(displayList, index, scaleChanged, context);
+                } else if (ops[i] == DisplayList.OP_PATH) {
+                    if (!valid || context.isPathBoundsStale(displayList, index)) {
+                        final RectF bounds = context.mPathBounds[index];
+                        dirty.union(bounds);
+                        updatePathBounds(displayList, index, context);
+                        dirty.union(bounds);
                     }
+                }
+            }
+            context.mPathBoundsValid = true;
+            return valid;
+        }
+
+        /**
+         * Compute the bounds of the path again, and record what they are
+         * computed from.
+         *
+         * @return the bounds
+         */
+        private static RectF updatePathBounds(DisplayList displayList, int index,
+                RenderContext context) {
+            final VPath path = displayList.mPaths[index];
+            final Matrix matrix = context.mFinalMatrices[displayList.mPathGroups[index]];
+            final RectF bounds = context.mPathBounds[index];
+            computePathBounds(displayList, index, matrix, context, bounds);
+            context.mPaintGenerations[index] = displayList.mPaintGenerations[index];
+            context.mBoundsGenerations[index] = path.mGeneration;
+            context.mBoundsMatrices[index].set(matrix);
+            return bounds;
+        }
+
+        /**
+         * Get the area on the canvas the path covers, with the stroke and
+         * anti-aliasing.
+         */
+        private static void computePathBounds(DisplayList displayList, int index,
+                Matrix matrix, RenderContext context, RectF bounds) {
+            final int flags = displayList.mPaintFlags[index];
+            if (flags == 0) {
+                bounds.setEmpty();
+                return;
+            }
 
-                    final Paint fillPaint = mFillPaint;
-                    fillPaint.setColor(applyAlpha(fullPath.mFillColor, fullPath.mFillAlpha));
-                    fillPaint.setColorFilter(filter);
-                    canvas.drawPath(mRenderPath, fillPaint);
+            // The source path is never copied for the bounds, the transformed
+            // bounds of the source path contain the render path
+            displayList.mPaths[index].getSourcePath().computeBounds(bounds, true);
+            matrix.mapRect(bounds);
+            float outset = 1.0f;
+            if ((flags & DisplayList.FLAG_STROKE) != 0) {
+                final float halfWidth = displayList.mStrokeWidths[index]
+                        * Math.min(context.mScaleX, context.mScaleY) / 2;
+                // Miter joins and square caps reach beyond half of the width
+                final float reach = displayList.mStrokeLineJoins[index] == Paint.Join.MITER
+                        ? Math.max(displayList.mStrokeMiterLimits[index], SQRT_2) : SQRT_2;
+                outset += halfWidth * reach;
+            }
+            bounds.inset(-outset, -outset);
+        }
+
+        private static void drawOps(DisplayList displayList, int start, int end,
+                Canvas canvas, ColorFilter filter, boolean scaleChanged,
+                RenderContext context) {
+            final byte[] ops = displayList.mOps;
+            final int[] operands = displayList.mOperands;
+            final boolean useCanvasMatrix = sUseCanvasMatrix;
+            // The group whose matrix is concatenated to the canvas
+            int concatGroup = -1;
+            int concatSaveCount = 0;
+            float strokeScale = 1.0f;
+            // The clip is in the coordinates of the canvas before any group
+            // matrix is concatenated, like the bounds of the paths
+            final boolean useCulling = sUseCulling;
+            final Rect clip = context.mClipBounds;
+            boolean clipEmpty = useCulling && !canvas.getClipBounds(clip);
+            final float minPathSize = context.mUseLevelOfDetail ? sLodMinPathSize : 0.0f;
+            int culled = 0;
+
+            // The ops are in the same order as the XML file.
+            for (int i = start; i < end; i++) {
+                final int index = operands[i];
+                switch (ops[i]) {
+                    case DisplayList.OP_GROUP:
+                        updateGroupMatrix(displayList, index, scaleChanged, context);
+                        break;
+                    case DisplayList.OP_CLIP_PATH:
+                        // The clip must outlive the save of the group matrix,
+                        // so it is always transformed on the CPU
+                        if (concatGroup != -1) {
+                            canvas.restoreToCount(concatSaveCount);
+                            concatGroup = -1;
+                        }
+                        canvas.clipPath(context.getRenderPath(displayList, index),
+                                Region.Op.REPLACE);
+                        if (useCulling) {
+                            clipEmpty = !canvas.getClipBounds(clip);
+                        }
+                        break;
+                    case DisplayList.OP_PATH:
+                        if (displayList.mPaintFlags[index] == 0) {
+                            // Neither filled nor stroked
+                            break;
+                        }
+                        if (useCulling || minPathSize > 0.0f) {
+                            final RectF bounds = context.isPathBoundsStale(displayList, index)
+                                    ? updatePathBounds(displayList, index, context)
+                                    : context.mPathBounds[index];
+                            if (useCulling && (clipEmpty || !bounds.intersects(clip.left,
+                                    clip.top, clip.right, clip.bottom))) {
+                                culled++;
+                                break;
+                            }
+                            // The bounds have a pixel of anti-aliasing on each side
+                            if (Math.max(bounds.width(), bounds.height()) - 2 < minPathSize) {
+                                break;
+                            }
+                        }
+                        if (!useCanvasMatrix) {
+                            drawPath(displayList, index,
+                                    context.getRenderPath(displayList, index), 1.0f,
+                                    canvas, filter, context);
+                            break;
+                        }
+                        final int group = displayList.mPathGroups[index];
+                        if (group != concatGroup) {
+                            if (concatGroup != -1) {
+                                canvas.restoreToCount(concatSaveCount);
+                            }
+                            final Matrix matrix = context.mFinalMatrices[group];
+                            concatSaveCount = canvas.save();
+                            canvas.concat(matrix);
+                            concatGroup = group;
+                            strokeScale = getStrokeScale(matrix, context.mMatrixValues);
+                        }
+                        if (strokeScale > 0.0f) {
+                            drawPath(displayList, index,
+                                    context.getSourcePath(displayList, index), strokeScale,
+                                    canvas, filter, context);
+                        }
+                        break;
+                }
+            }
+            if (concatGroup != -1) {
+                canvas.restoreToCount(concatSaveCount);
+            }
+            if (culled != 0) {
+                synchronized (sStatsLock) {
+                    sCulledPathCount += culled;
+                }
+            }
+        }
+
+        /**
+         * The stroke width is scaled by the viewport scale only. The canvas
+         * matrix scales it by the square root of its determinant, which is
+         * undone here.
+         *
+         * @return the factor of the stroke width under the matrix, 0 if the
+         * matrix is degenerate and nothing should be drawn
+         */
+        private static float getStrokeScale(Matrix matrix, float[] values) {
+            matrix.getValues(values);
+            final float det = values[Matrix.MSCALE_X] * values[Matrix.MSCALE_Y]
+                    - values[Matrix.MSKEW_X] * values[Matrix.MSKEW_Y];
+            if (det == 0.0f) {
+                return 0.0f;
+            }
+            return 1 / (float) Math.sqrt(Math.abs(det));
+        }
+
+        private static void updateGroupMatrix(DisplayList displayList, int index,
+                boolean scaleChanged, RenderContext context) {
+            // Calculate current group's matrix by preConcat the parent's and
+            // and the current one on the top of the stack.
+            // Basically the Mfinal = Mviewport * M0 * M1 * M2;
+            // Mi the local matrix at level i of the group tree.
+            // It is only done if this group or one of its parents changed.
+            // The parent always comes first, so its matrix is up to date.
+            final VGroup group = displayList.mGroups[index];
+            final int parent = displayList.mGroupParents[index];
+            final boolean changed = context.mGroupGenerations[index] != group.mGeneration
+                    || (parent < 0 ? scaleChanged : context.mGroupChanged[parent]);
+            context.mGroupChanged[index] = changed;
+            if (changed) {
+                final Matrix stackedMatrix = context.mStackedMatrices[index];
+                stackedMatrix.set(parent < 0
+                        ? IDENTITY_MATRIX : context.mStackedMatrices[parent]);
+                stackedMatrix.preConcat(group.getLocalMatrix());
+                final Matrix finalMatrix = context.mFinalMatrices[index];
+                finalMatrix.set(stackedMatrix);
+                finalMatrix.postScale(context.mScaleX, context.mScaleY);
+                context.mGroupGenerations[index] = group.mGeneration;
+            }
+        }
+
+        /**
+         * @param renderPath the path in the coordinates of the canvas
+         * @param strokeScale the factor of the stroke width on top of the
+         *                    viewport scale
+         */
+        private static void drawPath(DisplayList displayList, int index, Path renderPath,
+                float strokeScale, Canvas canvas, ColorFilter filter, RenderContext context) {
+            final int flags = displayList.mPaintFlags[index];
+            if (flags == 0) {
+                return;
+            }
+
+            if ((flags & DisplayList.FLAG_FILL) != 0) {
+                if (context.mFillPaint == null) {
+                    context.mFillPaint = new Paint();
+                    context.mFillPaint.setStyle(Paint.Style.FILL);
+                    context.mFillPaint.setAntiAlias(true);
+                }
+
+                final Paint fillPaint = context.mFillPaint;
+                fillPaint.setColor(displayList.mFillColors[index]);
+                fillPaint.setColorFilter(filter);
+                canvas.drawPath(renderPath, fillPaint);
+            }
+
+            if ((flags & DisplayList.FLAG_STROKE) != 0) {
+                if (context.mStrokePaint == null) {
+                    context.mStrokePaint = new Paint();
+                    context.mStrokePaint.setStyle(Paint.Style.STROKE);
+                    context.mStrokePaint.setAntiAlias(true);
+                }
+
+                final Paint strokePaint = context.mStrokePaint;
+                strokePaint.setStrokeJoin(displayList.mStrokeLineJoins[index]);
+                strokePaint.setStrokeCap(displayList.mStrokeLineCaps[index]);
+                strokePaint.setStrokeMiter(displayList.mStrokeMiterLimits[index]);
+                strokePaint.setColor(displayList.mStrokeColors[index]);
+                strokePaint.setColorFilter(filter);
+                strokePaint.setStrokeWidth(displayList.mStrokeWidths[index]
+                        * Math.min(context.mScaleX, context.mScaleY) * strokeScale);
+                canvas.drawPath(renderPath, strokePaint);
+            }
+        }
+    }
+
+    /**
+     * The scratch state of drawing a vector: the matrices of the groups, the
+     * transformed paths and the paints. The tree of the vector is only read
+     * when drawing, so several threads can draw the same vector at the same
+     * time, each with its own RenderContext.
+     * <p/>
+     * A RenderContext must only be used by one thread at a time. It can be
+     * used for different vectors, but it is faster to keep drawing the
+     * same one, the paths and matrices are only rebuilt when they change.
+     */
+    public static final class RenderContext {
+        private DisplayList mDisplayList;
+        // The scale from the viewport to the canvas
+        float mScaleX;
+        float mScaleY;
+
+        // Indexed by group. The generation of each group when its matrices
+        // were computed.
+        Matrix[] mStackedMatrices;
+        Matrix[] mFinalMatrices;
+        int[] mGroupGenerations;
+        // Whether the matrix of the group changed in the current draw
+        boolean[] mGroupChanged;
+
+        // Indexed by path. The paths transformed to the canvas by the
+        // render matrices, and the generation of each path when it was built.
+        // A render path is only created when it is used, they are never
+        // needed if the canvas matrix transforms the paths.
+        Path[] mRenderPaths;
+        Matrix[] mRenderMatrices;
+        int[] mPathGenerations;
+        final float[] mMatrixValues = new float[9];
+
+        // Indexed by path. The simplified paths, and the scale bucket and
+        // generation of each path when it was simplified.
+        boolean mUseLevelOfDetail = true;
+        Path[] mLodPaths;
+        int[] mLodBuckets;
+        int[] mLodGenerations;
+        float mLodTolerance;
+        SimplifyingPathSink mSimplifier;
+
+        Paint mFillPaint;
+        Paint mStrokePaint;
+
+        // The bitmaps of the static runs of the display list, and the color
+        // filter they are rendered with
+        Bitmap[] mLayers;
+        ColorFilter mLayerFilter;
+        // Whether the constant state of the layers is shared, they are
+        // dropped instead of returned to the pool then
+        boolean mLayersShared;
+
+        // Indexed by path. The area each path covered in the last draw, and
+        // the paint generation, path generation and matrix it was computed
+        // with, see VPathRenderer.drawChanges()
+        RectF[] mPathBounds;
+        int[] mPaintGenerations;
+        int[] mBoundsGenerations;
+        Matrix[] mBoundsMatrices;
+        boolean mPathBoundsValid;
+        final RectF mDirtyBounds = new RectF();
+        final Rect mDirtyRect = new Rect();
+        final Rect mClipBounds = new Rect();
+
+        /**
+         * Start drawing the display list at the scale.
+         *
+         * @return true if the scale changed
+         */
+        boolean bind(DisplayList displayList, float scaleX, float scaleY) {
+            if (mDisplayList != displayList) {
+                mDisplayList = displayList;
+                releaseLayers();
+                final int groupCount = displayList.mGroups.length;
+                mStackedMatrices = newMatrices(groupCount);
+                mFinalMatrices = newMatrices(groupCount);
+                mGroupGenerations = new int[groupCount];
+                mGroupChanged = new boolean[groupCount];
+
+                final int pathCount = displayList.mPaths.length;
+                mRenderPaths = new Path[pathCount];
+                mRenderMatrices = newMatrices(pathCount);
+                mPathGenerations = new int[pathCount];
+                mLodPaths = new Path[pathCount];
+                mLodBuckets = new int[pathCount];
+                mLodGenerations = new int[pathCount];
+                mPathBounds = new RectF[pathCount];
+                for (int i = 0; i < pathCount; i++) {
+                    mPathBounds[i] = new RectF();
                 }
+                mPaintGenerations = new int[pathCount];
+                mBoundsGenerations = new int[pathCount];
+                mBoundsMatrices = newMatrices(pathCount);
+                mPathBoundsValid = false;
+
+                // Everything is rebuilt
+                Arrays.fill(mGroupGenerations, -1);
+                Arrays.fill(mPathGenerations, -1);
+                Arrays.fill(mBoundsGenerations, -1);
+                Arrays.fill(mLodGenerations, -1);
+                mScaleX = 0;
+                mScaleY = 0;
+            }
 
-                if (fullPath.mStrokeColor != Color.TRANSPARENT) {
-                    if (mStrokePaint == null) {
-                        mStrokePaint = new Paint();
-                        mStrokePaint.setStyle(Paint.Style.STROKE);
-                        mStrokePaint.setAntiAlias(true);
+            final boolean scaleChanged = scaleX != mScaleX || scaleY != mScaleY;
+            mScaleX = scaleX;
+            mScaleY = scaleY;
+
+            final float lodTolerance = mUseLevelOfDetail ? sLodTolerance : 0.0f;
+            if (lodTolerance != mLodTolerance) {
+                // The render paths are made from the old simplified paths
+                mLodTolerance = lodTolerance;
+                Arrays.fill(mLodGenerations, -1);
+                Arrays.fill(mPathGenerations, -1);
+            }
+            return scaleChanged;
+        }
+
+        void releaseLayers() {
+            if (mLayers != null) {
+                for (Bitmap layer : mLayers) {
+                    if (layer != null) {
+                        releaseLayer(layer);
                     }
+                }
+                mLayers = null;
+            }
+        }
+
+        void releaseLayer(Bitmap layer) {
+            if (!mLayersShared) {
+                VectorDrawableState.releaseBitmap(layer);
+            }
+        }
+
+        private static Matrix[] newMatrices(int count) {
+            final Matrix[] matrices = new Matrix[count];
+            for (int i = 0; i < count; i++) {
+                matrices[i] = new Matrix();
+            }
+            return matrices;
+        }
+
+        /**
+         * @return the path to render, transformed by the final matrix of its group
+         */
+        Path getRenderPath(DisplayList displayList, int index) {
+            Path renderPath = mRenderPaths[index];
+            if (renderPath == null) {
+                renderPath = new Path();
+                mRenderPaths[index] = renderPath;
+                mPathGenerations[index] = -1;
+            }
+            if (isRenderPathStale(displayList, index)) {
+                final VPath path = displayList.mPaths[index];
+                final Matrix matrix = mFinalMatrices[displayList.mPathGroups[index]];
+                renderPath.reset();
+                renderPath.addPath(getSourcePath(displayList, index), matrix);
+                mRenderMatrices[index].set(matrix);
+                mPathGenerations[index] = path.mGeneration;
+            }
+            return renderPath;
+        }
+
+        /**
+         * @return the path to render before it is transformed, simplified
+         * for the scale of its group if level of detail is enabled
+         */
+        Path getSourcePath(DisplayList displayList, int index) {
+            final VPath path = displayList.mPaths[index];
+            final float tolerance = mLodTolerance;
+            if (tolerance <= 0.0f || !path.canSimplify()) {
+                return path.getSourcePath();
+            }
+
+            // The simplified path of a scale bucket is within the tolerance
+            // at any scale in the bucket, so it isn't made again for small
+            // changes of the scale
+            final Matrix matrix = mFinalMatrices[displayList.mPathGroups[index]];
+            final float[] values = mMatrixValues;
+            matrix.getValues(values);
+            final float scale = Math.max(
+                    (float) Math.hypot(values[Matrix.MSCALE_X], values[Matrix.MSKEW_Y]),
+                    (float) Math.hypot(values[Matrix.MSKEW_X], values[Matrix.MSCALE_Y]));
+            final int bucket = Math.getExponent(scale);
+
+            Path lodPath = mLodPaths[index];
+            if (lodPath == null) {
+                lodPath = new Path();
+                mLodPaths[index] = lodPath;
+            } else if (mLodGenerations[index] == path.mGeneration
+                    && mLodBuckets[index] == bucket) {
+                return lodPath;
+            }
+
+            // The scale of the bucket is less than 2^(bucket + 1), so the
+            // tolerance in the viewport is conservative
+            final float viewportTolerance = Math.scalb(tolerance, -(bucket + 1));
+            lodPath.reset();
+            if (mSimplifier == null) {
+                mSimplifier = new SimplifyingPathSink(lodPath, viewportTolerance);
+            } else {
+                mSimplifier.setPath(lodPath, viewportTolerance);
+            }
+            path.mPathData.visit(mSimplifier);
+            mSimplifier.finish();
+            mLodBuckets[index] = bucket;
+            mLodGenerations[index] = path.mGeneration;
+            return lodPath;
+        }
+
+        /**
+         * @return true if the path, its paint or the matrix changed since
+         * the bounds were computed
+         */
+        boolean isPathBoundsStale(DisplayList displayList, int index) {
+            return mPaintGenerations[index] != displayList.mPaintGenerations[index]
+                    || mBoundsGenerations[index] != displayList.mPaths[index].mGeneration
+                    || !mBoundsMatrices[index].equals(
+                            mFinalMatrices[displayList.mPathGroups[index]]);
+        }
+
+        /**
+         * @return true if the path or the matrix changed since the render
+         * path was built
+         */
+        private boolean isRenderPathStale(DisplayList displayList, int index) {
+            return mPathGenerations[index] != displayList.mPaths[index].mGeneration
+                    || !mRenderMatrices[index].equals(
+                            mFinalMatrices[displayList.mPathGroups[index]]);
+        }
+    }
 
-                    final Paint strokePaint = mStrokePaint;
-                    if (fullPath.mStrokeLineJoin != null) {
-                        strokePaint.setStrokeJoin(fullPath.mStrokeLineJoin);
+    /**
+     * The group tree compiled to a flat program, so drawing is a loop over
+     * arrays instead of a recursive walk with type checks. The groups are in
+     * pre-order, so a parent always comes before its children and all the
+     * matrices are updated in one pass.
+     * <p/>
+     * The paint parameters of the paths are kept in parallel arrays indexed
+     * by path. A VFullPath writes to its slot when an animator changes it.
+     */
+    private static final class DisplayList {
+        static final byte OP_GROUP = 0;
+        static final byte OP_CLIP_PATH = 1;
+        static final byte OP_PATH = 2;
+
+        static final int FLAG_FILL = 0x1;
+        static final int FLAG_STROKE = 0x2;
+
+        // Each op with the index of its group or path
+        final byte[] mOps;
+        final int[] mOperands;
+
+        final VGroup[] mGroups;
+        final int[] mGroupParents;
+
+        final VPath[] mPaths;
+        final int[] mPathGroups;
+        final int[] mPaintFlags;
+        // Colors with alpha applied
+        final int[] mFillColors;
+        final int[] mStrokeColors;
+        final float[] mStrokeWidths;
+        final float[] mStrokeMiterLimits;
+        final Paint.Cap[] mStrokeLineCaps;
+        final Paint.Join[] mStrokeLineJoins;
+
+        // Increased whenever the paint of the path changes
+        final int[] mPaintGenerations;
+
+        final boolean mHasClipPath;
+        // The op ranges of the runs of children of the root which have no
+        // node owned by the renderer, so they are never animated
+        final int[] mStaticRunStarts;
+        final int[] mStaticRunEnds;
+
+        // Whether all the paths are drawn in the same color, and the opaque
+        // color. Updated by isMonochrome().
+        private boolean mMonochromeDirty = true;
+        private boolean mMonochrome;
+        int mMonochromeColor;
+
+        /**
+         * @param owner only the paths owned by it are bound to the display
+         * list, the shared ones are never modified by it
+         */
+        DisplayList(VGroup root, VPathRenderer owner) {
+            final ArrayList<VGroup> groups = new ArrayList<VGroup>();
+            final ArrayList<VPath> paths = new ArrayList<VPath>();
+            countNodes(root, groups, paths);
+
+            final int opCount = groups.size() + paths.size();
+            mOps = new byte[opCount];
+            mOperands = new int[opCount];
+
+            mGroups = groups.toArray(new VGroup[groups.size()]);
+            mGroupParents = new int[mGroups.length];
+
+            final int pathCount = paths.size();
+            mPaths = paths.toArray(new VPath[pathCount]);
+            mPathGroups = new int[pathCount];
+            mPaintFlags = new int[pathCount];
+            mFillColors = new int[pathCount];
+            mStrokeColors = new int[pathCount];
+            mStrokeWidths = new float[pathCount];
+            mStrokeMiterLimits = new float[pathCount];
+            mStrokeLineCaps = new Paint.Cap[pathCount];
+            mStrokeLineJoins = new Paint.Join[pathCount];
+            mPaintGenerations = new int[pathCount];
+
+            final int[] counters = new int[3];
+            compile(root, -1, counters);
+
+            boolean hasClipPath = false;
+            for (byte op : mOps) {
+                hasClipPath |= op == OP_CLIP_PATH;
+            }
+            mHasClipPath = hasClipPath;
+
+            for (int i = 0; i < pathCount; i++) {
+                final VPath path = mPaths[i];
+                if (path instanceof VFullPath) {
+                    final VFullPath fullPath = (VFullPath) path;
+                    if (owner.isOwned(fullPath)) {
+                        fullPath.mDisplayList = this;
+                        fullPath.mSlot = i;
                     }
+                    updatePaint(i, fullPath);
+                }
+            }
+
+            final ArrayList<int[]> runs = findStaticRuns(root, owner);
+            mStaticRunStarts = new int[runs.size()];
+            mStaticRunEnds = new int[runs.size()];
+            for (int i = 0, n = runs.size(); i < n; i++) {
+                mStaticRunStarts[i] = runs.get(i)[0];
+                mStaticRunEnds[i] = runs.get(i)[1];
+            }
+        }
+
+        private ArrayList<int[]> findStaticRuns(VGroup root, VPathRenderer owner) {
+            final ArrayList<int[]> runs = new ArrayList<int[]>();
+            // If the renderer owns the whole tree, it is not known which
+            // parts are animated
+            if (owner.mOwnsTree) {
+                return runs;
+            }
+            // A clip path applies until the end of the drawing, it would be
+            // lost between the layers
+            if (mHasClipPath) {
+                return runs;
+            }
+
+            // The ops of the root group come first
+            int op = 1;
+            int[] run = null;
+            final ArrayList<Object> children = root.mChildren;
+            for (int i = 0, n = children.size(); i < n; i++) {
+                final Object child = children.get(i);
+                final int opCount = child instanceof VGroup ? countOps((VGroup) child) : 1;
+                if (owner.isOwned(child)) {
+                    run = null;
+                } else if (run == null) {
+                    run = new int[] {op, op + opCount};
+                    runs.add(run);
+                } else {
+                    run[1] = op + opCount;
+                }
+                op += opCount;
+            }
+            return runs;
+        }
+
+        private static int countOps(VGroup group) {
+            int count = 1;
+            final ArrayList<Object> children = group.mChildren;
+            for (int i = 0, n = children.size(); i < n; i++) {
+                final Object child = children.get(i);
+                count += child instanceof VGroup ? countOps((VGroup) child) : 1;
+            }
+            return count;
+        }
+
+        private static void countNodes(VGroup group, ArrayList<VGroup> groups,
+                ArrayList<VPath> paths) {
+            groups.add(group);
+            final ArrayList<Object> children = group.mChildren;
+            for (int i = 0, n = children.size(); i < n; i++) {
+                final Object child = children.get(i);
+                if (child instanceof VGroup) {
+                    countNodes((VGroup) child, groups, paths);
+                } else {
+                    paths.add((VPath) child);
+                }
+            }
+        }
+
+        /**
+         * @param counters the next op, group and path index
+         */
+        private void compile(VGroup group, int parent, int[] counters) {
+            final int groupIndex = counters[1]++;
+            mGroupParents[groupIndex] = parent;
+            addOp(OP_GROUP, groupIndex, counters);
+
+            final ArrayList<Object> children = group.mChildren;
+            for (int i = 0, n = children.size(); i < n; i++) {
+                final Object child = children.get(i);
+                if (child instanceof VGroup) {
+                    compile((VGroup) child, groupIndex, counters);
+                } else {
+                    final int pathIndex = counters[2]++;
+                    mPathGroups[pathIndex] = groupIndex;
+                    addOp(((VPath) child).isClipPath() ? OP_CLIP_PATH : OP_PATH,
+                            pathIndex, counters);
+                }
+            }
+        }
 
-                    if (fullPath.mStrokeLineCap != null) {
-                        strokePaint.setStrokeCap(fullPath.mStrokeLineCap);
+        private void addOp(byte op, int operand, int[] counters) {
+            final int index = counters[0]++;
+            mOps[index] = op;
+            mOperands[index] = operand;
+        }
+
+        void updatePaint(int index, VFullPath path) {
+            int flags = 0;
+            if (path.mFillColor != Color.TRANSPARENT) {
+                flags |= FLAG_FILL;
+            }
+            if (path.mStrokeColor != Color.TRANSPARENT) {
+                flags |= FLAG_STROKE;
+            }
+            mPaintFlags[index] = flags;
+            mFillColors[index] = applyAlpha(path.mFillColor, path.mFillAlpha);
+            mStrokeColors[index] = applyAlpha(path.mStrokeColor, path.mStrokeAlpha);
+            mStrokeWidths[index] = path.mStrokeWidth;
+            mStrokeMiterLimits[index] = path.mStrokeMiterlimit;
+            mStrokeLineCaps[index] = path.mStrokeLineCap;
+            mStrokeLineJoins[index] = path.mStrokeLineJoin;
+            mPaintGenerations[index]++;
+            mMonochromeDirty = true;
+        }
+
+        /**
+         * @return true if all the paths are filled and stroked with the same
+         * color, only their alpha may differ
+         */
+        boolean isMonochrome() {
+            if (mMonochromeDirty) {
+                boolean monochrome = true;
+                boolean found = false;
+                int rgb = 0;
+                for (int i = 0, n = mPaintFlags.length; i < n && monochrome; i++) {
+                    final int flags = mPaintFlags[i];
+                    if ((flags & FLAG_FILL) != 0) {
+                        final int color = mFillColors[i] & 0x00FFFFFF;
+                        monochrome = !found || color == rgb;
+                        rgb = color;
+                        found = true;
                     }
+                    if ((flags & FLAG_STROKE) != 0) {
+                        final int color = mStrokeColors[i] & 0x00FFFFFF;
+                        monochrome &= !found || color == rgb;
+                        rgb = color;
+                        found = true;
+                    }
+                }
+                mMonochrome = monochrome;
+                mMonochromeColor = 0xFF000000 | rgb;
+                mMonochromeDirty = false;
+            }
+            return mMonochrome;
+        }
 
-                    strokePaint.setStrokeMiter(fullPath.mStrokeMiterlimit);
-                    strokePaint.setColor(applyAlpha(fullPath.mStrokeColor, fullPath.mStrokeAlpha));
-                    strokePaint.setColorFilter(filter);
-                    strokePaint.setStrokeWidth(fullPath.mStrokeWidth * minScale);
-                    canvas.drawPath(mRenderPath, strokePaint);
+        /**
+         * @return true if the first thing drawn is an opaque rectangle which
+         * covers the whole viewport, so no pixel is left translucent
+         */
+        boolean isOpaque(float viewportWidth, float viewportHeight) {
+            for (int i = 0, n = mOps.length; i < n; i++) {
+                final byte op = mOps[i];
+                if (op == OP_CLIP_PATH) {
+                    return false;
+                } else if (op == OP_PATH) {
+                    final int index = mOperands[i];
+                    if ((mPaintFlags[index] & FLAG_FILL) == 0
+                            || Color.alpha(mFillColors[index]) != 0xFF) {
+                        return false;
+                    }
+                    // Only the rectangle in viewport space is checked
+                    for (int group = mPathGroups[index]; group != -1;
+                            group = mGroupParents[group]) {
+                        if (!mGroups[group].getLocalMatrix().isIdentity()) {
+                            return false;
+                        }
+                    }
+                    final RectF rect = new RectF();
+                    return mPaths[index].getSourcePath().isRect(rect)
+                            && rect.left <= 0 && rect.top <= 0
+                            && rect.right >= viewportWidth && rect.bottom >= viewportHeight;
                 }
             }
+            return false;
         }
     }
 
     private static class VGroup {
-        // mStackedMatrix is only used temporarily when drawing, it combines all
-        // the parents' local matrices with the current one.
-        private final Matrix mStackedMatrix = new Matrix();
+        // Increased whenever the local matrix changes. A RenderContext only
+        // recomputes the matrices of the groups whose generation changed, or
+        // one of whose parents changed.
+        int mGeneration;
 
         /////////////////////////////////////////////////////
         // Variables below need to be copied (deep copy if applicable) for mutation.
@@ -926,12 +2503,17 @@ public class VectorDrawable extends Drawable {
         private float mTranslateY = 0;
 
         // mLocalMatrix is updated based on the update of transformation information,
-        // either parsed from the XML or by animation.
+        // either parsed from the XML or by animation. It is computed lazily, so
+        // several properties set in the same frame only update it once.
         private final Matrix mLocalMatrix = new Matrix();
+        private boolean mLocalMatrixDirty = true;
         private int mChangingConfigurations;
         private String mGroupName = null;
 
-        public VGroup(VGroup copy, ArrayMap<String, Object> targetsMap) {
+        /**
+         * Copy the group, the children are shared with <code>copy</code>.
+         */
+        public VGroup(VGroup copy) {
             mRotate = copy.mRotate;
             mPivotX = copy.mPivotX;
             mPivotY = copy.mPivotY;
@@ -941,33 +2523,7 @@ public class VectorDrawable extends Drawable {
             mTranslateY = copy.mTranslateY;
             mGroupName = copy.mGroupName;
             mChangingConfigurations = copy.mChangingConfigurations;
-            if (mGroupName != null) {
-                targetsMap.put(mGroupName, this);
-            }
-
-            mLocalMatrix.set(copy.mLocalMatrix);
-
-            final ArrayList<Object> children = copy.mChildren;
-            for (int i = 0; i < children.size(); i++) {
-                Object copyChild = children.get(i);
-                if (copyChild instanceof VGroup) {
-                    VGroup copyGroup = (VGroup) copyChild;
-                    mChildren.add(new VGroup(copyGroup, targetsMap));
-                } else {
-                    VPath newPath = null;
-                    if (copyChild instanceof VFullPath) {
-                        newPath = new VFullPath((VFullPath) copyChild);
-                    } else if (copyChild instanceof VClipPath) {
-                        newPath = new VClipPath((VClipPath) copyChild);
-                    } else {
-                        throw new IllegalStateException("Unknown object in the tree!");
-                    }
-                    mChildren.add(newPath);
-                    if (newPath.mPathName != null) {
-                        targetsMap.put(newPath.mPathName, newPath);
-                    }
-                }
-            }
+            mChildren.addAll(copy.mChildren);
         }
 
         public VGroup() {
@@ -978,6 +2534,10 @@ public class VectorDrawable extends Drawable {
         }
 
         public Matrix getLocalMatrix() {
+            if (mLocalMatrixDirty) {
+                updateLocalMatrix();
+                mLocalMatrixDirty = false;
+            }
             return mLocalMatrix;
         }
 
@@ -1005,7 +2565,25 @@ public class VectorDrawable extends Drawable {
                 mGroupName = groupName;
             }
 
-            updateLocalMatrix();
+            invalidateLocalMatrix();
+        }
+
+        public void read(ByteBuffer buffer, String[] strings) {
+            mGroupName = CompiledVectorLoader.readString(buffer, strings);
+            mRotate = buffer.getFloat();
+            mPivotX = buffer.getFloat();
+            mPivotY = buffer.getFloat();
+            mScaleX = buffer.getFloat();
+            mScaleY = buffer.getFloat();
+            mTranslateX = buffer.getFloat();
+            mTranslateY = buffer.getFloat();
+
+            invalidateLocalMatrix();
+        }
+
+        private void invalidateLocalMatrix() {
+            mLocalMatrixDirty = true;
+            mGeneration++;
         }
 
         private void updateLocalMatrix() {
@@ -1028,7 +2606,7 @@ public class VectorDrawable extends Drawable {
         public void setRotation(float rotation) {
             if (rotation != mRotate) {
                 mRotate = rotation;
-                updateLocalMatrix();
+                invalidateLocalMatrix();
             }
         }
 
@@ -1041,7 +2619,7 @@ public class VectorDrawable extends Drawable {
         public void setPivotX(float pivotX) {
             if (pivotX != mPivotX) {
                 mPivotX = pivotX;
-                updateLocalMatrix();
+                invalidateLocalMatrix();
             }
         }
 
@@ -1054,7 +2632,7 @@ public class VectorDrawable extends Drawable {
         public void setPivotY(float pivotY) {
             if (pivotY != mPivotY) {
                 mPivotY = pivotY;
-                updateLocalMatrix();
+                invalidateLocalMatrix();
             }
         }
 
@@ -1067,7 +2645,7 @@ public class VectorDrawable extends Drawable {
         public void setScaleX(float scaleX) {
             if (scaleX != mScaleX) {
                 mScaleX = scaleX;
-                updateLocalMatrix();
+                invalidateLocalMatrix();
             }
         }
 
@@ -1080,7 +2658,7 @@ public class VectorDrawable extends Drawable {
         public void setScaleY(float scaleY) {
             if (scaleY != mScaleY) {
                 mScaleY = scaleY;
-                updateLocalMatrix();
+                invalidateLocalMatrix();
             }
         }
 
@@ -1093,7 +2671,7 @@ public class VectorDrawable extends Drawable {
         public void setTranslateX(float translateX) {
             if (translateX != mTranslateX) {
                 mTranslateX = translateX;
-                updateLocalMatrix();
+                invalidateLocalMatrix();
             }
         }
 
@@ -1106,7 +2684,7 @@ public class VectorDrawable extends Drawable {
         public void setTranslateY(float translateY) {
             if (translateY != mTranslateY) {
                 mTranslateY = translateY;
-                updateLocalMatrix();
+                invalidateLocalMatrix();
             }
         }
     }
@@ -1115,10 +2693,19 @@ public class VectorDrawable extends Drawable {
      * Common Path information for clip path and normal path.
      */
     private static class VPath {
-        protected PathParser.PathDataNode[] mNodes = null;
+        protected PathData mPathData = null;
+        // Normalizing would be wasted on the parameters changing every frame
+        boolean mMorphing;
         String mPathName;
         int mChangingConfigurations;
 
+        // The Path built from mPathData, only rebuilt when it is dirty
+        private final Path mPath = new Path();
+        private boolean mPathDirty = true;
+        // Increased whenever the source path changes, a RenderContext
+        // rebuilds its transformed path when it sees a new generation
+        int mGeneration;
+
         public VPath() {
             // Empty constructor.
         }
@@ -1126,13 +2713,51 @@ public class VectorDrawable extends Drawable {
         public VPath(VPath copy) {
             mPathName = copy.mPathName;
             mChangingConfigurations = copy.mChangingConfigurations;
-            mNodes = PathParser.deepCopyNodes(copy.mNodes);
+            if (copy.mPathData != null) {
+                // Shared PathData is copied on write
+                mPathData = copy.mPathData.isShared()
+                        ? copy.mPathData : new PathData(copy.mPathData);
+            }
+        }
+
+        /**
+         * Mark the cached paths dirty, call it whenever mPathData changes.
+         */
+        void invalidatePath() {
+            mPathDirty = true;
+            mGeneration++;
+        }
+
+        void invalidateRenderPath() {
+            mGeneration++;
+        }
+
+        /**
+         * @return the path in the viewport coordinates
+         */
+        Path getPath() {
+            if (mPathDirty) {
+                toPath(mPath);
+                mPathDirty = false;
+            }
+            return mPath;
+        }
+
+        /**
+         * @return the path to render before it is transformed
+         */
+        Path getSourcePath() {
+            return getPath();
         }
 
         public void toPath(Path path) {
             path.reset();
-            if (mNodes != null) {
-                PathParser.PathDataNode.nodesToPath(mNodes, path);
+            if (mPathData != null) {
+                if (sNormalizePathData && !mMorphing) {
+                    mPathData.normalize().toPath(path);
+                } else {
+                    mPathData.toPath(path);
+                }
             }
         }
 
@@ -1144,20 +2769,34 @@ public class VectorDrawable extends Drawable {
             return false;
         }
 
+        /**
+         * @return true if the path may be drawn from a simplified copy of
+         * its path data
+         */
+        boolean canSimplify() {
+            return mPathData != null && !mMorphing;
+        }
+
         /* Setters and Getters, used by animator from AnimatedVectorDrawable. */
         @SuppressWarnings("unused")
-        public PathParser.PathDataNode[] getPathData() {
-            return mNodes;
+        public PathData getPathData() {
+            return mPathData;
         }
 
         @SuppressWarnings("unused")
-        public void setPathData(PathParser.PathDataNode[] nodes) {
-            if (!PathParser.canMorph(mNodes, nodes)) {
+        public void setPathData(PathData pathData) {
+            if (mPathData == null || !mPathData.canMorph(pathData)) {
                 // This should not happen in the middle of animation.
-                mNodes = PathParser.deepCopyNodes(nodes);
+                mPathData = pathData != null ? new PathData(pathData) : null;
             } else {
-                PathParser.updateNodes(mNodes, nodes);
+                if (mPathData.isShared()) {
+                    // Copy on write
+                    mPathData = new PathData(mPathData);
+                }
+                mPathData.setParams(pathData);
+                mMorphing = true;
             }
+            invalidatePath();
         }
     }
 
@@ -1191,10 +2830,15 @@ public class VectorDrawable extends Drawable {
 
             final String pathData = a.getString(R.styleable.VectorDrawableClipPath_pathData);
             if (pathData != null) {
-                mNodes = PathParser.createNodesFromPathData(pathData);
+                mPathData = PathDataCache.obtain(pathData);
             }
         }
 
+        public void read(ByteBuffer buffer, String[] strings) {
+            mPathName = CompiledVectorLoader.readString(buffer, strings);
+            mPathData = CompiledVectorLoader.readPathData(buffer);
+        }
+
         @Override
         public boolean isClipPath() {
             return true;
@@ -1222,6 +2866,19 @@ public class VectorDrawable extends Drawable {
         Paint.Join mStrokeLineJoin = Paint.Join.MITER;
         float mStrokeMiterlimit = 4;
 
+        // The display list this path is compiled into and its index in it
+        DisplayList mDisplayList;
+        int mSlot;
+
+        // The trimmed path, only used if the path is trimmed.
+        private Path mTrimmedPath;
+        private boolean mTrimmedPathDirty = true;
+        // The measure of the path and its length. They only change with the
+        // path data, animating the trim values just extracts new segments.
+        private PathMeasure mPathMeasure;
+        private float mPathLength;
+        private boolean mPathMeasureDirty = true;
+
         public VFullPath() {
             // Empty constructor.
         }
@@ -1244,6 +2901,93 @@ public class VectorDrawable extends Drawable {
             mStrokeMiterlimit = copy.mStrokeMiterlimit;
         }
 
+        @Override
+        void invalidatePath() {
+            super.invalidatePath();
+            mTrimmedPathDirty = true;
+            mPathMeasureDirty = true;
+        }
+
+        private void invalidateTrimmedPath() {
+            mTrimmedPathDirty = true;
+            invalidateRenderPath();
+        }
+
+        /**
+         * @return true if the path may be merged with its siblings, see
+         * {@link VectorDrawable#setMergePaths(boolean)}
+         */
+        boolean canMerge() {
+            // A path starting with 'm' is normalized to start with 'M', it
+            // is only normalized in flushMergeRun() if it is really merged
+            return mPathName == null && mPathData != null
+                    && mPathData.getCommandCount() != 0
+                    && (mPathData.getCommand(0) == 'M' || mPathData.getCommand(0) == 'm')
+                    && mStrokeColor == Color.TRANSPARENT
+                    && Color.alpha(mFillColor) == 0xFF && mFillAlpha == 1.0f
+                    && mTrimPathStart == 0.0f && mTrimPathEnd == 1.0f
+                    && mTrimPathOffset == 0.0f;
+        }
+
+        /**
+         * @return true if the path is filled the same way as the other
+         */
+        boolean hasSamePaint(VFullPath other) {
+            return mFillColor == other.mFillColor && mFillAlpha == other.mFillAlpha
+                    && mFillRule == other.mFillRule;
+        }
+
+        @Override
+        boolean canSimplify() {
+            // Trimming depends on the exact length of the path
+            return super.canSimplify() && mTrimPathStart == 0.0f && mTrimPathEnd == 1.0f;
+        }
+
+        @Override
+        Path getSourcePath() {
+            final Path path = getPath();
+            if (mTrimPathStart == 0.0f && mTrimPathEnd == 1.0f) {
+                return path;
+            }
+
+            if (mTrimmedPathDirty) {
+                if (mTrimmedPath == null) {
+                    mTrimmedPath = new Path();
+                    mPathMeasure = new PathMeasure();
+                }
+                if (mPathMeasureDirty) {
+                    // Like the framework, only the first contour is trimmed,
+                    // so the measure is never moved to the next contour
+                    mPathMeasure.setPath(path, false);
+                    mPathLength = mPathMeasure.getLength();
+                    mPathMeasureDirty = false;
+                }
+
+                final Path trimmedPath = mTrimmedPath;
+                float start = (mTrimPathStart + mTrimPathOffset) % 1.0f;
+                float end = (mTrimPathEnd + mTrimPathOffset) % 1.0f;
+                final float len = mPathLength;
+                start = start * len;
+                end = end * len;
+                trimmedPath.reset();
+                if (start > end) {
+                    mPathMeasure.getSegment(start, len, trimmedPath, true);
+                    mPathMeasure.getSegment(0f, end, trimmedPath, true);
+                } else {
+                    mPathMeasure.getSegment(start, end, trimmedPath, true);
+                }
+                trimmedPath.rLineTo(0, 0); // fix bug in measure
+                mTrimmedPathDirty = false;
+            }
+            return mTrimmedPath;
+        }
+
+        private void updatePaint() {
+            if (mDisplayList != null) {
+                mDisplayList.updatePaint(mSlot, this);
+            }
+        }
+
         private Paint.Cap getStrokeLineCap(int id, Paint.Cap defValue) {
             switch (id) {
                 case LINECAP_BUTT:
@@ -1288,7 +3032,7 @@ public class VectorDrawable extends Drawable {
 
             final String pathData = a.getString(R.styleable.VectorDrawablePath_pathData);
             if (pathData != null) {
-                mNodes = PathParser.createNodesFromPathData(pathData);
+                mPathData = PathDataCache.obtain(pathData);
             }
 
             mFillColor = a.getColor(R.styleable.VectorDrawablePath_fillColor,
@@ -1315,6 +3059,22 @@ public class VectorDrawable extends Drawable {
                     R.styleable.VectorDrawablePath_trimPathStart, mTrimPathStart);
         }
 
+        public void read(ByteBuffer buffer, String[] strings) {
+            mPathName = CompiledVectorLoader.readString(buffer, strings);
+            mFillColor = buffer.getInt();
+            mFillAlpha = buffer.getFloat();
+            mStrokeColor = buffer.getInt();
+            mStrokeWidth = buffer.getFloat();
+            mStrokeAlpha = buffer.getFloat();
+            mTrimPathStart = buffer.getFloat();
+            mTrimPathEnd = buffer.getFloat();
+            mTrimPathOffset = buffer.getFloat();
+            mStrokeLineCap = getStrokeLineCap(buffer.get(), mStrokeLineCap);
+            mStrokeLineJoin = getStrokeLineJoin(buffer.get(), mStrokeLineJoin);
+            mStrokeMiterlimit = buffer.getFloat();
+            mPathData = CompiledVectorLoader.readPathData(buffer);
+        }
+
         /* Setters and Getters, used by animator from AnimatedVectorDrawable. */
         @SuppressWarnings("unused")
         int getStrokeColor() {
@@ -1324,6 +3084,7 @@ public class VectorDrawable extends Drawable {
         @SuppressWarnings("unused")
         void setStrokeColor(int strokeColor) {
             mStrokeColor = strokeColor;
+            updatePaint();
         }
 
         @SuppressWarnings("unused")
@@ -1334,6 +3095,7 @@ public class VectorDrawable extends Drawable {
         @SuppressWarnings("unused")
         void setStrokeWidth(float strokeWidth) {
             mStrokeWidth = strokeWidth;
+            updatePaint();
         }
 
         @SuppressWarnings("unused")
@@ -1344,6 +3106,7 @@ public class VectorDrawable extends Drawable {
         @SuppressWarnings("unused")
         void setStrokeAlpha(float strokeAlpha) {
             mStrokeAlpha = strokeAlpha;
+            updatePaint();
         }
 
         @SuppressWarnings("unused")
@@ -1354,6 +3117,7 @@ public class VectorDrawable extends Drawable {
         @SuppressWarnings("unused")
         void setFillColor(int fillColor) {
             mFillColor = fillColor;
+            updatePaint();
         }
 
         @SuppressWarnings("unused")
@@ -1364,6 +3128,7 @@ public class VectorDrawable extends Drawable {
         @SuppressWarnings("unused")
         void setFillAlpha(float fillAlpha) {
             mFillAlpha = fillAlpha;
+            updatePaint();
         }
 
         @SuppressWarnings("unused")
@@ -1373,7 +3138,10 @@ public class VectorDrawable extends Drawable {
 
         @SuppressWarnings("unused")
         void setTrimPathStart(float trimPathStart) {
-            mTrimPathStart = trimPathStart;
+            if (trimPathStart != mTrimPathStart) {
+                mTrimPathStart = trimPathStart;
+                invalidateTrimmedPath();
+            }
         }
 
         @SuppressWarnings("unused")
@@ -1383,7 +3151,10 @@ public class VectorDrawable extends Drawable {
 
         @SuppressWarnings("unused")
         void setTrimPathEnd(float trimPathEnd) {
-            mTrimPathEnd = trimPathEnd;
+            if (trimPathEnd != mTrimPathEnd) {
+                mTrimPathEnd = trimPathEnd;
+                invalidateTrimmedPath();
+            }
         }
 
         @SuppressWarnings("unused")
@@ -1393,7 +3164,10 @@ public class VectorDrawable extends Drawable {
 
         @SuppressWarnings("unused")
         void setTrimPathOffset(float trimPathOffset) {
-            mTrimPathOffset = trimPathOffset;
+            if (trimPathOffset != mTrimPathOffset) {
+                mTrimPathOffset = trimPathOffset;
+                invalidateTrimmedPath();
+            }
         }
     }
 }
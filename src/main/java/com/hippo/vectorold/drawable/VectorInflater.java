@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.drawable;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Inflates VectorDrawable and AnimatedVectorDrawable on an Executor, so XML
+ * parsing, path parsing and loading animators don't block the main thread.
+ * <p/>
+ * The drawable is loaded with the resources of the context, so on
+ * pre-Lollipop the context must be wrapped by
+ * {@link com.hippo.vectorold.content.VectorContext#wrapContext(Context)}.
+ * The resources also cache the constant state, so a later
+ * {@link Resources#getDrawable(int)} of the same id on the main thread
+ * doesn't inflate again while the state is alive.
+ * <p/>
+ * Requests for a resource id which is still inflating share the
+ * inflation. Callbacks are always called on the main thread.
+ */
+public class VectorInflater {
+
+    private final Resources mResources;
+    private final Executor mExecutor;
+    private final Handler mHandler;
+
+    private final Object mLock = new Object();
+    // Callbacks waiting for each resource id, protected by mLock
+    private final SparseArray<ArrayList<Callback>> mPending =
+            new SparseArray<ArrayList<Callback>>();
+
+    public VectorInflater(Context context, Executor executor) {
+        mResources = context.getResources();
+        mExecutor = executor;
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Inflate the drawable on the executor.
+     *
+     * @param resId the id of the drawable resource
+     * @param callback called on the main thread when it is done
+     */
+    public void inflate(final int resId, Callback callback) {
+        synchronized (mLock) {
+            ArrayList<Callback> callbacks = mPending.get(resId);
+            if (callbacks != null) {
+                // It is inflating
+                callbacks.add(callback);
+                return;
+            }
+            callbacks = new ArrayList<Callback>();
+            callbacks.add(callback);
+            mPending.put(resId, callbacks);
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Drawable.ConstantState state = null;
+                Exception error = null;
+                try {
+                    final Drawable drawable = mResources.getDrawable(resId);
+                    if (drawable != null) {
+                        state = drawable.getConstantState();
+                    }
+                    if (state == null) {
+                        error = new Resources.NotFoundException(
+                                "No constant state for resource ID #0x"
+                                        + Integer.toHexString(resId));
+                    }
+                } catch (Exception e) {
+                    error = e;
+                }
+                deliver(resId, state, error);
+            }
+        });
+    }
+
+    private void deliver(final int resId, final Drawable.ConstantState state,
+            final Exception error) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final ArrayList<Callback> callbacks;
+                synchronized (mLock) {
+                    callbacks = mPending.get(resId);
+                    mPending.remove(resId);
+                }
+                if (callbacks == null) {
+                    return;
+                }
+                for (int i = 0, n = callbacks.size(); i < n; i++) {
+                    if (error == null) {
+                        callbacks.get(i).onInflated(resId, state);
+                    } else {
+                        callbacks.get(i).onFailed(resId, error);
+                    }
+                }
+            }
+        });
+    }
+
+    public interface Callback {
+
+        /**
+         * Create drawables with {@link Drawable.ConstantState#newDrawable(Resources)}.
+         */
+        void onInflated(int resId, Drawable.ConstantState state);
+
+        void onFailed(int resId, Exception e);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.util;
+
+import android.graphics.Bitmap;
+
+/**
+ * A pool of bitmaps which are no longer used, so they can be reused instead
+ * of allocating new ones.
+ */
+public interface BitmapPool {
+
+    /**
+     * Take a bitmap out of the pool. The content of the bitmap is undefined.
+     *
+     * @return a mutable bitmap with the size and config, or null if there is
+     * no suitable one in the pool
+     */
+    Bitmap get(int width, int height, Bitmap.Config config);
+
+    /**
+     * Give a bitmap to the pool. The caller must not use it any more.
+     */
+    void put(Bitmap bitmap);
+
+    /**
+     * Release memory according to the level, see
+     * {@link android.content.ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    void trimMemory(int level);
+
+    /**
+     * Drop all the bitmaps.
+     */
+    void clear();
+}
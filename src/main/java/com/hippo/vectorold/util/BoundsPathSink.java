@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.util;
+
+import android.graphics.RectF;
+
+/**
+ * A {@link PathSink} which only computes the bounds of the path. The bounds
+ * include the control points of curves, so they may be larger than the
+ * exact bounds, the same as <code>Path.computeBounds(bounds, false)</code>.
+ */
+public class BoundsPathSink implements PathSink {
+    private float mLeft;
+    private float mTop;
+    private float mRight;
+    private float mBottom;
+    private float mCurrentX;
+    private float mCurrentY;
+    private float mStartX;
+    private float mStartY;
+
+    public BoundsPathSink() {
+        reset();
+    }
+
+    /**
+     * Forget all the points added so far.
+     */
+    public void reset() {
+        mLeft = Float.POSITIVE_INFINITY;
+        mTop = Float.POSITIVE_INFINITY;
+        mRight = Float.NEGATIVE_INFINITY;
+        mBottom = Float.NEGATIVE_INFINITY;
+        mCurrentX = 0;
+        mCurrentY = 0;
+        mStartX = 0;
+        mStartY = 0;
+    }
+
+    /**
+     * @return false if no point has been added
+     */
+    public boolean hasBounds() {
+        return mLeft <= mRight;
+    }
+
+    /**
+     * @param bounds receives the bounds, or empty if no point has been added
+     */
+    public void getBounds(RectF bounds) {
+        if (hasBounds()) {
+            bounds.set(mLeft, mTop, mRight, mBottom);
+        } else {
+            bounds.setEmpty();
+        }
+    }
+
+    private void addPoint(float x, float y) {
+        if (x < mLeft) {
+            mLeft = x;
+        }
+        if (x > mRight) {
+            mRight = x;
+        }
+        if (y < mTop) {
+            mTop = y;
+        }
+        if (y > mBottom) {
+            mBottom = y;
+        }
+    }
+
+    @Override
+    public void moveTo(float x, float y) {
+        addPoint(x, y);
+        mCurrentX = mStartX = x;
+        mCurrentY = mStartY = y;
+    }
+
+    @Override
+    public void lineTo(float x, float y) {
+        addPoint(x, y);
+        mCurrentX = x;
+        mCurrentY = y;
+    }
+
+    @Override
+    public void quadTo(float x1, float y1, float x2, float y2) {
+        addPoint(x1, y1);
+        addPoint(x2, y2);
+        mCurrentX = x2;
+        mCurrentY = y2;
+    }
+
+    @Override
+    public void cubicTo(float x1, float y1, float x2, float y2, float x3, float y3) {
+        addPoint(x1, y1);
+        addPoint(x2, y2);
+        addPoint(x3, y3);
+        mCurrentX = x3;
+        mCurrentY = y3;
+    }
+
+    @Override
+    public void arcTo(float rx, float ry, float rotation, boolean largeArc, boolean sweep,
+            float x, float y) {
+        PathParser.arcToCubics(this, mCurrentX, mCurrentY, x, y, rx, ry, rotation,
+                largeArc, sweep);
+        addPoint(x, y);
+        mCurrentX = x;
+        mCurrentY = y;
+    }
+
+    @Override
+    public void close() {
+        mCurrentX = mStartX;
+        mCurrentY = mStartY;
+    }
+}
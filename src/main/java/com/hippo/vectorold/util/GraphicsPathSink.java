@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.util;
+
+import android.graphics.Path;
+
+/**
+ * A {@link PathSink} which adds the commands to a {@link Path}. Arcs are
+ * converted to cubic Bézier curves.
+ */
+public class GraphicsPathSink implements PathSink {
+    private Path mPath;
+    private float mCurrentX;
+    private float mCurrentY;
+    private float mStartX;
+    private float mStartY;
+
+    public GraphicsPathSink(Path path) {
+        mPath = path;
+    }
+
+    /**
+     * Start adding to another path.
+     */
+    public void setPath(Path path) {
+        mPath = path;
+        mCurrentX = 0;
+        mCurrentY = 0;
+        mStartX = 0;
+        mStartY = 0;
+    }
+
+    public Path getPath() {
+        return mPath;
+    }
+
+    @Override
+    public void moveTo(float x, float y) {
+        mPath.moveTo(x, y);
+        mCurrentX = mStartX = x;
+        mCurrentY = mStartY = y;
+    }
+
+    @Override
+    public void lineTo(float x, float y) {
+        mPath.lineTo(x, y);
+        mCurrentX = x;
+        mCurrentY = y;
+    }
+
+    @Override
+    public void quadTo(float x1, float y1, float x2, float y2) {
+        mPath.quadTo(x1, y1, x2, y2);
+        mCurrentX = x2;
+        mCurrentY = y2;
+    }
+
+    @Override
+    public void cubicTo(float x1, float y1, float x2, float y2, float x3, float y3) {
+        mPath.cubicTo(x1, y1, x2, y2, x3, y3);
+        mCurrentX = x3;
+        mCurrentY = y3;
+    }
+
+    @Override
+    public void arcTo(float rx, float ry, float rotation, boolean largeArc, boolean sweep,
+            float x, float y) {
+        PathParser.arcToCubics(this, mCurrentX, mCurrentY, x, y, rx, ry, rotation,
+                largeArc, sweep);
+        // Keep the exact end point rather than the computed one
+        mCurrentX = x;
+        mCurrentY = y;
+    }
+
+    @Override
+    public void close() {
+        mPath.close();
+        mCurrentX = mStartX;
+        mCurrentY = mStartY;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.util;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A {@link BitmapPool} bounded by a byte budget. The bitmaps are bucketed by
+ * their byte count and dropped in least recently put order.
+ * <p/>
+ * From KitKat a bitmap is reused for a smaller size with
+ * {@link Bitmap#reconfigure(int, int, Bitmap.Config)}, before that only a
+ * bitmap with the same size and config can be reused.
+ */
+public class LruBitmapPool implements BitmapPool {
+
+    // Don't waste a bitmap much larger than needed
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private static final boolean CAN_RECONFIGURE =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+
+    private final int mMaxBytes;
+    private int mSize;
+
+    private final TreeMap<Integer, ArrayList<Bitmap>> mBuckets =
+            new TreeMap<Integer, ArrayList<Bitmap>>();
+    // Least recently put first
+    private final LinkedList<Bitmap> mBitmaps = new LinkedList<Bitmap>();
+
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * @param maxBytes the max size of the bitmaps in the pool in bytes
+     */
+    public LruBitmapPool(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    @Override
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        final int needed = width * height * getBytesPerPixel(config);
+        Bitmap bitmap = null;
+        if (CAN_RECONFIGURE) {
+            // The smallest bitmap which is large enough
+            final Map.Entry<Integer, ArrayList<Bitmap>> entry = mBuckets.ceilingEntry(needed);
+            if (entry != null && entry.getKey() <= needed * MAX_SIZE_MULTIPLE) {
+                final ArrayList<Bitmap> bucket = entry.getValue();
+                bitmap = bucket.get(bucket.size() - 1);
+            }
+        } else {
+            final ArrayList<Bitmap> bucket = mBuckets.get(needed);
+            if (bucket != null) {
+                for (int i = bucket.size() - 1; i >= 0; i--) {
+                    final Bitmap b = bucket.get(i);
+                    if (b.getWidth() == width && b.getHeight() == height
+                            && b.getConfig() == config) {
+                        bitmap = b;
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (bitmap == null) {
+            mMissCount++;
+            return null;
+        }
+
+        mHitCount++;
+        remove(bitmap);
+        mBitmaps.remove(bitmap);
+        if (bitmap.getWidth() != width || bitmap.getHeight() != height
+                || bitmap.getConfig() != config) {
+            bitmap.reconfigure(width, height, config);
+        }
+        return bitmap;
+    }
+
+    @Override
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        final int size = getByteCount(bitmap);
+        if (size > mMaxBytes) {
+            return;
+        }
+
+        ArrayList<Bitmap> bucket = mBuckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayList<Bitmap>();
+            mBuckets.put(size, bucket);
+        }
+        bucket.add(bitmap);
+        mBitmaps.addLast(bitmap);
+        mSize += size;
+
+        trimToSize(mMaxBytes);
+    }
+
+    @Override
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimToSize(mMaxBytes / 2);
+        }
+    }
+
+    @Override
+    public void clear() {
+        trimToSize(0);
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return the size of the bitmaps in the pool in bytes
+     */
+    public synchronized int getSize() {
+        return mSize;
+    }
+
+    private synchronized void trimToSize(int maxBytes) {
+        while (mSize > maxBytes && !mBitmaps.isEmpty()) {
+            // The dropped bitmap is left to the GC, it might still be in
+            // the display list of the last frame.
+            remove(mBitmaps.removeFirst());
+        }
+    }
+
+    /**
+     * Remove the bitmap from its bucket.
+     */
+    private void remove(Bitmap bitmap) {
+        final int size = getByteCount(bitmap);
+        final ArrayList<Bitmap> bucket = mBuckets.get(size);
+        bucket.remove(bitmap);
+        if (bucket.isEmpty()) {
+            mBuckets.remove(size);
+        }
+        mSize -= size;
+    }
+
+    private static int getByteCount(Bitmap bitmap) {
+        return CAN_RECONFIGURE ? bitmap.getAllocationByteCount() : bitmap.getByteCount();
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            case ARGB_8888:
+            default:
+                return 4;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.util;
+
+import java.util.ArrayList;
+
+/**
+ * A {@link PathSink} which records the commands as an array of
+ * {@link PathParser.PathDataNode}. Only the absolute commands
+ * M, L, Q, C, A and Z are generated.
+ */
+public class NodesPathSink implements PathSink {
+    private final ArrayList<PathParser.PathDataNode> mNodes =
+            new ArrayList<PathParser.PathDataNode>();
+
+    /**
+     * @return the nodes recorded so far
+     */
+    public PathParser.PathDataNode[] getNodes() {
+        return mNodes.toArray(new PathParser.PathDataNode[mNodes.size()]);
+    }
+
+    public void reset() {
+        mNodes.clear();
+    }
+
+    private void add(char type, float... params) {
+        mNodes.add(new PathParser.PathDataNode(type, params));
+    }
+
+    @Override
+    public void moveTo(float x, float y) {
+        add('M', x, y);
+    }
+
+    @Override
+    public void lineTo(float x, float y) {
+        add('L', x, y);
+    }
+
+    @Override
+    public void quadTo(float x1, float y1, float x2, float y2) {
+        add('Q', x1, y1, x2, y2);
+    }
+
+    @Override
+    public void cubicTo(float x1, float y1, float x2, float y2, float x3, float y3) {
+        add('C', x1, y1, x2, y2, x3, y3);
+    }
+
+    @Override
+    public void arcTo(float rx, float ry, float rotation, boolean largeArc, boolean sweep,
+            float x, float y) {
+        add('A', rx, ry, rotation, largeArc ? 1 : 0, sweep ? 1 : 0, x, y);
+    }
+
+    @Override
+    public void close() {
+        add('Z');
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.util;
+
+import java.util.Arrays;
+
+/**
+ * Builds a normalized {@link PathData}, which only contains absolute M, L, C
+ * and Z commands. Quadratic curves are raised to cubic ones and arcs are
+ * converted to cubic Bézier curves.
+ */
+class NormalizingPathSink implements PathSink {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private byte[] mCommands;
+    private int[] mOffsets;
+    private int mCommandCount;
+
+    private float[] mParams;
+    private int mParamCount;
+
+    private float mCurrentX;
+    private float mCurrentY;
+    private float mStartX;
+    private float mStartY;
+
+    /**
+     * @param commandCount the expected count of commands
+     * @param paramCount the expected count of parameters
+     */
+    NormalizingPathSink(int commandCount, int paramCount) {
+        mCommands = new byte[Math.max(commandCount, INITIAL_CAPACITY)];
+        mOffsets = new int[mCommands.length + 1];
+        mParams = new float[Math.max(paramCount, INITIAL_CAPACITY)];
+    }
+
+    private void addCommand(char command, int paramCount) {
+        if (mCommandCount == mCommands.length) {
+            mCommands = Arrays.copyOf(mCommands, mCommandCount * 2);
+            mOffsets = Arrays.copyOf(mOffsets, mCommandCount * 2 + 1);
+        }
+        mCommands[mCommandCount] = (byte) command;
+        mOffsets[mCommandCount] = mParamCount;
+        mCommandCount++;
+
+        if (mParamCount + paramCount > mParams.length) {
+            mParams = Arrays.copyOf(mParams, Math.max(mParams.length * 2,
+                    mParamCount + paramCount));
+        }
+    }
+
+    @Override
+    public void moveTo(float x, float y) {
+        addCommand('M', 2);
+        mParams[mParamCount++] = x;
+        mParams[mParamCount++] = y;
+        mCurrentX = mStartX = x;
+        mCurrentY = mStartY = y;
+    }
+
+    @Override
+    public void lineTo(float x, float y) {
+        addCommand('L', 2);
+        mParams[mParamCount++] = x;
+        mParams[mParamCount++] = y;
+        mCurrentX = x;
+        mCurrentY = y;
+    }
+
+    @Override
+    public void quadTo(float x1, float y1, float x2, float y2) {
+        // Degree elevation, the cubic curve is exactly the same
+        cubicTo(mCurrentX + 2.0f / 3.0f * (x1 - mCurrentX),
+                mCurrentY + 2.0f / 3.0f * (y1 - mCurrentY),
+                x2 + 2.0f / 3.0f * (x1 - x2),
+                y2 + 2.0f / 3.0f * (y1 - y2),
+                x2, y2);
+    }
+
+    @Override
+    public void cubicTo(float x1, float y1, float x2, float y2, float x3, float y3) {
+        addCommand('C', 6);
+        final float[] params = mParams;
+        int i = mParamCount;
+        params[i++] = x1;
+        params[i++] = y1;
+        params[i++] = x2;
+        params[i++] = y2;
+        params[i++] = x3;
+        params[i++] = y3;
+        mParamCount = i;
+        mCurrentX = x3;
+        mCurrentY = y3;
+    }
+
+    @Override
+    public void arcTo(float rx, float ry, float rotation, boolean largeArc, boolean sweep,
+            float x, float y) {
+        PathParser.arcToCubics(this, mCurrentX, mCurrentY, x, y, rx, ry, rotation,
+                largeArc, sweep);
+        mCurrentX = x;
+        mCurrentY = y;
+    }
+
+    @Override
+    public void close() {
+        addCommand('Z', 0);
+        mCurrentX = mStartX;
+        mCurrentY = mStartY;
+    }
+
+    PathData toPathData() {
+        final int[] offsets = Arrays.copyOf(mOffsets, mCommandCount + 1);
+        offsets[mCommandCount] = mParamCount;
+        final PathData data = new PathData(Arrays.copyOf(mCommands, mCommandCount), offsets,
+                Arrays.copyOf(mParams, mParamCount));
+        data.mNormalized = data;
+        return data;
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.util;
+
+import android.graphics.Path;
+
+import java.util.Arrays;
+
+/**
+ * Packed form of the "d" attribute of the svg file. The command letters are
+ * stored in one byte array and all the parameters in one float array.
+ * The parameters of command <code>i</code> are
+ * <code>mParams[mOffsets[i]]</code> to <code>mParams[mOffsets[i + 1] - 1]</code>.
+ */
+public class PathData {
+    final byte[] mCommands;
+    final int[] mOffsets;
+    final float[] mParams;
+
+    // Shared PathData comes from PathDataCache, it must not be modified
+    boolean mShared;
+
+    // The normalized form, this if it is already normalized, null if it
+    // isn't computed yet. It is dropped when the parameters change.
+    volatile PathData mNormalized;
+
+    PathData(byte[] commands, int[] offsets, float[] params) {
+        mCommands = commands;
+        mOffsets = offsets;
+        mParams = params;
+    }
+
+    /**
+     * Create a PathData from packed arrays, the arrays are used directly.
+     *
+     * @param commands the command letters
+     * @param offsets the start of the parameters of each command, followed
+     *                by the total count of parameters
+     * @param params the parameters of all the commands
+     * @return the PathData
+     */
+    public static PathData create(byte[] commands, int[] offsets, float[] params) {
+        if (offsets.length != commands.length + 1
+                || offsets[0] != 0 || offsets[commands.length] != params.length) {
+            throw new IllegalArgumentException("Offsets don't match commands and params");
+        }
+        for (int i = 0; i < commands.length; i++) {
+            if (offsets[i] > offsets[i + 1]) {
+                throw new IllegalArgumentException("Offsets must be ascending");
+            }
+        }
+        return new PathData(commands, offsets, params);
+    }
+
+    /**
+     * Create a copy of <code>copy</code> which owns its parameters.
+     */
+    public PathData(PathData copy) {
+        // Commands and offsets never change once created, only the
+        // parameters are updated by morphing.
+        mCommands = copy.mCommands;
+        mOffsets = copy.mOffsets;
+        mParams = Arrays.copyOf(copy.mParams, copy.mParams.length);
+        // The normalized form is never modified, share it
+        final PathData normalized = copy.mNormalized;
+        mNormalized = normalized == copy ? this : normalized;
+    }
+
+    /**
+     * @param nodes The source path represented in an array of PathDataNode
+     * @return the packed form of <code>nodes</code>
+     */
+    public static PathData fromNodes(PathParser.PathDataNode[] nodes) {
+        if (nodes == null) {
+            return null;
+        }
+
+        final int count = nodes.length;
+        final byte[] commands = new byte[count];
+        final int[] offsets = new int[count + 1];
+        int paramCount = 0;
+        for (int i = 0; i < count; i++) {
+            commands[i] = (byte) nodes[i].getType();
+            offsets[i] = paramCount;
+            paramCount += nodes[i].getParams().length;
+        }
+        offsets[count] = paramCount;
+
+        final float[] params = new float[paramCount];
+        for (int i = 0; i < count; i++) {
+            final float[] nodeParams = nodes[i].getParams();
+            System.arraycopy(nodeParams, 0, params, offsets[i], nodeParams.length);
+        }
+        return new PathData(commands, offsets, params);
+    }
+
+    /**
+     * Join several paths into one, one after another. Each of them must
+     * start with an absolute moveTo, so none of them depends on where the
+     * one before it ends.
+     *
+     * @param parts the paths to join
+     * @return the joined path, normalized if all the parts are
+     */
+    public static PathData concat(PathData[] parts) {
+        int commandCount = 0;
+        int paramCount = 0;
+        boolean normalized = true;
+        for (PathData part : parts) {
+            if (part.mCommands.length == 0 || part.mCommands[0] != 'M') {
+                throw new IllegalArgumentException("Each part must start with M");
+            }
+            commandCount += part.mCommands.length;
+            paramCount += part.mParams.length;
+            normalized &= part.isNormalized();
+        }
+
+        final byte[] commands = new byte[commandCount];
+        final int[] offsets = new int[commandCount + 1];
+        final float[] params = new float[paramCount];
+        int commandIndex = 0;
+        int paramIndex = 0;
+        for (PathData part : parts) {
+            final int count = part.mCommands.length;
+            System.arraycopy(part.mCommands, 0, commands, commandIndex, count);
+            for (int i = 0; i < count; i++) {
+                offsets[commandIndex + i] = paramIndex + part.mOffsets[i];
+            }
+            System.arraycopy(part.mParams, 0, params, paramIndex, part.mParams.length);
+            commandIndex += count;
+            paramIndex += part.mParams.length;
+        }
+        offsets[commandCount] = paramCount;
+
+        final PathData result = new PathData(commands, offsets, params);
+        if (normalized) {
+            result.mNormalized = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return an array of PathDataNode which represents the same path
+     */
+    public PathParser.PathDataNode[] toNodes() {
+        final int count = mCommands.length;
+        final PathParser.PathDataNode[] nodes = new PathParser.PathDataNode[count];
+        for (int i = 0; i < count; i++) {
+            nodes[i] = new PathParser.PathDataNode((char) mCommands[i],
+                    Arrays.copyOfRange(mParams, mOffsets[i], mOffsets[i + 1]));
+        }
+        return nodes;
+    }
+
+    public int getCommandCount() {
+        return mCommands.length;
+    }
+
+    public char getCommand(int index) {
+        return (char) mCommands[index];
+    }
+
+    public int getParamCount() {
+        return mParams.length;
+    }
+
+    /**
+     * @return true if this PathData is shared by several users, modifying
+     * it is not allowed, make a copy with {@link #PathData(PathData)} instead.
+     */
+    public boolean isShared() {
+        return mShared;
+    }
+
+    private void checkModifiable() {
+        if (mShared) {
+            throw new IllegalStateException("Can't modify shared PathData");
+        }
+    }
+
+    /**
+     * @return true if it only contains absolute M, L, C and Z commands
+     */
+    public boolean isNormalized() {
+        return mNormalized == this;
+    }
+
+    /**
+     * Get the same path in absolute M, L, C and Z commands only. Relative
+     * commands, smooth curves and arcs are resolved once here, so building
+     * a Path from the result is a plain loop without any trigonometry.
+     * <p/>
+     * The result is cached until the parameters change. It must not be
+     * modified. The commands of this PathData are kept as they are, so it
+     * can still morph into paths with the same commands.
+     *
+     * @return the normalized PathData, this if it is already normalized
+     */
+    public PathData normalize() {
+        PathData normalized = mNormalized;
+        if (normalized == null) {
+            final NormalizingPathSink sink = new NormalizingPathSink(
+                    mCommands.length, mParams.length);
+            visit(sink);
+            normalized = sink.toPathData();
+            normalized.mShared = true;
+            mNormalized = normalized;
+        }
+        return normalized;
+    }
+
+    /**
+     * @param to The target path
+     * @return whether this path can morph into <code>to</code>
+     */
+    public boolean canMorph(PathData to) {
+        if (to == null) {
+            return false;
+        }
+        // Commands and offsets are shared between copies
+        return (mCommands == to.mCommands || Arrays.equals(mCommands, to.mCommands))
+                && (mOffsets == to.mOffsets || Arrays.equals(mOffsets, to.mOffsets));
+    }
+
+    /**
+     * Update the parameters to match the source.
+     * Before calling this, make sure canMorph(source) is true.
+     *
+     * @param source The source path
+     */
+    public void setParams(PathData source) {
+        checkModifiable();
+        System.arraycopy(source.mParams, 0, mParams, 0, mParams.length);
+        mNormalized = null;
+    }
+
+    /**
+     * The parameters will be interpolated between <code>from</code> and
+     * <code>to</code> according to the <code>fraction</code>.
+     * Before calling this, make sure both of them can morph into this path.
+     *
+     * @param from The start value
+     * @param to The end value
+     * @param fraction The fraction to interpolate.
+     */
+    public void interpolate(PathData from, PathData to, float fraction) {
+        checkModifiable();
+        final float[] params = mParams;
+        final float[] fromParams = from.mParams;
+        final float[] toParams = to.mParams;
+        for (int i = 0, n = params.length; i < n; i++) {
+            params[i] = fromParams[i] * (1 - fraction) + toParams[i] * fraction;
+        }
+        mNormalized = null;
+    }
+
+    /**
+     * Add the commands to the path.
+     *
+     * @param path The target Path object.
+     */
+    public void toPath(Path path) {
+        if (mNormalized != this) {
+            visit(new GraphicsPathSink(path));
+            return;
+        }
+
+        final byte[] commands = mCommands;
+        final float[] params = mParams;
+        int k = 0;
+        for (int i = 0, n = commands.length; i < n; i++) {
+            switch (commands[i]) {
+                case 'M':
+                    path.moveTo(params[k], params[k + 1]);
+                    k += 2;
+                    break;
+                case 'L':
+                    path.lineTo(params[k], params[k + 1]);
+                    k += 2;
+                    break;
+                case 'C':
+                    path.cubicTo(params[k], params[k + 1], params[k + 2], params[k + 3],
+                            params[k + 4], params[k + 5]);
+                    k += 6;
+                    break;
+                case 'Z':
+                    path.close();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Feed the commands to the sink in absolute coordinates.
+     *
+     * @param sink The receiver of the commands.
+     */
+    public void visit(PathSink sink) {
+        final byte[] commands = mCommands;
+        final int[] offsets = mOffsets;
+        final float[] params = mParams;
+        final PathParser.PathWalker walker = new PathParser.PathWalker(sink);
+        for (int i = 0, n = commands.length; i < n; i++) {
+            walker.addCommand((char) commands[i], params, offsets[i], offsets[i + 1]);
+        }
+    }
+}
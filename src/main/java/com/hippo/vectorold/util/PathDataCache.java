@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.util;
+
+import android.support.v4.util.LruCache;
+
+/**
+ * A process-wide LRU cache which interns parsed pathData strings, so the same
+ * string in different vectors or animators is parsed once and the result is
+ * shared. It is disabled until {@link #setMaxBytes(int)} is called.
+ * <p/>
+ * The returned PathData is shared, see {@link PathData#isShared()}. Copy it
+ * before modifying.
+ */
+public final class PathDataCache {
+
+    // Object header, array headers and references of one entry
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private static final Object sLock = new Object();
+    private static LruCache<String, PathData> sCache;
+    private static int sHitCount;
+    private static int sMissCount;
+
+    private PathDataCache() {
+    }
+
+    /**
+     * Set the memory budget of the cache, or 0 to disable it.
+     * The entries in the cache are dropped.
+     *
+     * @param maxBytes the max size of the cache in bytes
+     */
+    public static void setMaxBytes(int maxBytes) {
+        synchronized (sLock) {
+            if (maxBytes <= 0) {
+                sCache = null;
+            } else {
+                sCache = new LruCache<String, PathData>(maxBytes) {
+                    @Override
+                    protected int sizeOf(String key, PathData value) {
+                        return getByteCount(key, value);
+                    }
+                };
+            }
+        }
+    }
+
+    /**
+     * @param pathData The string representing a path, the same as "d" string in svg file.
+     * @return the shared PathData if the cache is enabled, otherwise a new one
+     */
+    public static PathData obtain(String pathData) {
+        if (pathData == null) {
+            return null;
+        }
+
+        final LruCache<String, PathData> cache;
+        synchronized (sLock) {
+            cache = sCache;
+        }
+        if (cache == null) {
+            return PathParser.createPathData(pathData);
+        }
+
+        PathData data = cache.get(pathData);
+        if (data != null) {
+            synchronized (sLock) {
+                sHitCount++;
+            }
+            return data;
+        }
+
+        // Parse outside of the lock, the same string parsed by two threads
+        // at the same time is harmless.
+        data = PathParser.createPathData(pathData);
+        data.mShared = true;
+        cache.put(pathData, data);
+        synchronized (sLock) {
+            sMissCount++;
+        }
+        return data;
+    }
+
+    /**
+     * Drop all the entries and reset the counters.
+     */
+    public static void clear() {
+        synchronized (sLock) {
+            if (sCache != null) {
+                sCache.evictAll();
+            }
+            sHitCount = 0;
+            sMissCount = 0;
+        }
+    }
+
+    public static int getHitCount() {
+        synchronized (sLock) {
+            return sHitCount;
+        }
+    }
+
+    public static int getMissCount() {
+        synchronized (sLock) {
+            return sMissCount;
+        }
+    }
+
+    /**
+     * @return the size of the entries in bytes
+     */
+    public static int getSize() {
+        synchronized (sLock) {
+            return sCache != null ? sCache.size() : 0;
+        }
+    }
+
+    private static int getByteCount(String key, PathData value) {
+        return ENTRY_OVERHEAD + key.length() * 2 + value.mCommands.length
+                + value.mOffsets.length * 4 + value.mParams.length * 4;
+    }
+}
@@ -17,7 +17,6 @@ package com.hippo.vectorold.util;
 import android.graphics.Path;
 import android.util.Log;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 
 /**
@@ -31,42 +30,61 @@ public class PathParser {
      * @return the generated Path object.
      */
     public static Path createPathFromPathData(String pathData) {
-        Path path = new Path();
-        PathDataNode[] nodes = createNodesFromPathData(pathData);
-        if (nodes != null) {
-            PathDataNode.nodesToPath(nodes, path);
-            return path;
+        if (pathData == null) {
+            return null;
         }
-        return null;
+        Path path = new Path();
+        parsePathData(pathData, new GraphicsPathSink(path));
+        return path;
     }
 
     /**
+     * Parse the string and feed the commands to the sink as they are read,
+     * without building any intermediate representation.
+     *
      * @param pathData The string representing a path, the same as "d" string in svg file.
-     * @return an array of the PathDataNode.
+     *                 Nothing is fed to the sink if it is null.
+     * @param sink The receiver of the absolute commands.
      */
-    public static PathDataNode[] createNodesFromPathData(String pathData) {
+    public static void parsePathData(String pathData, PathSink sink) {
         if (pathData == null) {
-            return null;
+            return;
         }
-        int start = 0;
-        int end = 1;
 
-        ArrayList<PathDataNode> list = new ArrayList<PathDataNode>();
-        while (end < pathData.length()) {
-            end = nextStart(pathData, end);
-            String s = pathData.substring(start, end).trim();
-            if (s.length() > 0) {
-                float[] val = getFloats(s);
-                addNode(list, s.charAt(0), val);
-            }
+        PathDataScanner scanner = new PathDataScanner(pathData);
+        PathWalker walker = new PathWalker(sink);
+        char cmd;
+        while ((cmd = scanner.nextCommand()) != 0) {
+            scanner.reset();
+            scanner.readCommand(cmd);
+            walker.addCommand(cmd, scanner.mParams, 0, scanner.mParamCount);
+        }
+    }
 
-            start = end;
-            end++;
+    /**
+     * @param pathData The string representing a path, the same as "d" string in svg file.
+     * @return the packed PathData.
+     */
+    public static PathData createPathData(String pathData) {
+        if (pathData == null) {
+            return null;
         }
-        if ((end - start) == 1 && start < pathData.length()) {
-            addNode(list, pathData.charAt(start), new float[0]);
+
+        PathDataScanner scanner = new PathDataScanner(pathData);
+        char cmd;
+        while ((cmd = scanner.nextCommand()) != 0) {
+            scanner.readCommand(cmd);
         }
-        return list.toArray(new PathDataNode[list.size()]);
+        return scanner.toPathData();
+    }
+
+    /**
+     * @param pathData The string representing a path, the same as "d" string in svg file.
+     * @return an array of the PathDataNode.
+     */
+    public static PathDataNode[] createNodesFromPathData(String pathData) {
+        PathData data = createPathData(pathData);
+        return data != null ? data.toNodes() : null;
     }
 
     /**
@@ -123,177 +141,211 @@ public class PathParser {
         }
     }
 
-    private static int nextStart(String s, int end) {
-        char c;
+    /**
+     * Convert an elliptical arc to cubic Bézier curves and feed them to the
+     * sink. The parameters are the same as the "A" command of svg.
+     *
+     * @param sink The target for the cubic Bézier curves
+     * @param x0 The x coordinate of the current point
+     * @param y0 The y coordinate of the current point
+     * @param x1 The x coordinate of the end point
+     * @param y1 The y coordinate of the end point
+     * @param a The radius of the ellipse in the horizontal direction
+     * @param b The radius of the ellipse in the vertical direction
+     * @param theta The x-axis rotation of the ellipse in degrees
+     * @param isMoreThanHalf The large-arc flag
+     * @param isPositiveArc The sweep flag
+     */
+    public static void arcToCubics(PathSink sink,
+            float x0,
+            float y0,
+            float x1,
+            float y1,
+            float a,
+            float b,
+            float theta,
+            boolean isMoreThanHalf,
+            boolean isPositiveArc) {
+
+        /* Convert rotation angle from degrees to radians */
+        double thetaD = Math.toRadians(theta);
+        /* Pre-compute rotation matrix entries */
+        double cosTheta = Math.cos(thetaD);
+        double sinTheta = Math.sin(thetaD);
+        /* Transform (x0, y0) and (x1, y1) into unit space */
+        /* using (inverse) rotation, followed by (inverse) scale */
+        double x0p = (x0 * cosTheta + y0 * sinTheta) / a;
+        double y0p = (-x0 * sinTheta + y0 * cosTheta) / b;
+        double x1p = (x1 * cosTheta + y1 * sinTheta) / a;
+        double y1p = (-x1 * sinTheta + y1 * cosTheta) / b;
+
+        /* Compute differences and averages */
+        double dx = x0p - x1p;
+        double dy = y0p - y1p;
+        double xm = (x0p + x1p) / 2;
+        double ym = (y0p + y1p) / 2;
+        /* Solve for intersecting unit circles */
+        double dsq = dx * dx + dy * dy;
+        if (dsq == 0.0) {
+            Log.w(LOGTAG, " Points are coincident");
+            return; /* Points are coincident */
+        }
+        double disc = 1.0 / dsq - 1.0 / 4.0;
+        if (disc < 0.0) {
+            Log.w(LOGTAG, "Points are too far apart " + dsq);
+            float adjust = (float) (Math.sqrt(dsq) / 1.99999);
+            arcToCubics(sink, x0, y0, x1, y1, a * adjust,
+                    b * adjust, theta, isMoreThanHalf, isPositiveArc);
+            return; /* Points are too far apart */
+        }
+        double s = Math.sqrt(disc);
+        double sdx = s * dx;
+        double sdy = s * dy;
+        double cx;
+        double cy;
+        if (isMoreThanHalf == isPositiveArc) {
+            cx = xm - sdy;
+            cy = ym + sdx;
+        } else {
+            cx = xm + sdy;
+            cy = ym - sdx;
+        }
+
+        double eta0 = Math.atan2((y0p - cy), (x0p - cx));
+
+        double eta1 = Math.atan2((y1p - cy), (x1p - cx));
 
-        while (end < s.length()) {
-            c = s.charAt(end);
-            if (((c - 'A') * (c - 'Z') <= 0) || (((c - 'a') * (c - 'z') <= 0))) {
-                return end;
+        double sweep = (eta1 - eta0);
+        if (isPositiveArc != (sweep >= 0)) {
+            if (sweep > 0) {
+                sweep -= 2 * Math.PI;
+            } else {
+                sweep += 2 * Math.PI;
             }
-            end++;
         }
-        return end;
-    }
 
-    private static void addNode(ArrayList<PathDataNode> list, char cmd, float[] val) {
-        list.add(new PathDataNode(cmd, val));
-    }
+        cx *= a;
+        cy *= b;
+        double tcx = cx;
+        cx = cx * cosTheta - cy * sinTheta;
+        cy = tcx * sinTheta + cy * cosTheta;
 
-    private static class ExtractFloatResult {
-        // We need to return the position of the next separator and whether the
-        // next float starts with a '-'.
-        int mEndPosition;
-        boolean mEndWithNegSign;
+        arcToBezier(sink, cx, cy, a, b, x0, y0, thetaD, eta0, sweep);
     }
 
     /**
-     * Parse the floats in the string.
-     * This is an optimized version of parseFloat(s.split(",|\\s"));
+     * Converts an arc to cubic Bezier segments and records them in sink.
      *
-     * @param s the string containing a command and list of floats
-     * @return array of floats
+     * @param sink The target for the cubic Bezier segments
+     * @param cx The x coordinate center of the ellipse
+     * @param cy The y coordinate center of the ellipse
+     * @param a The radius of the ellipse in the horizontal direction
+     * @param b The radius of the ellipse in the vertical direction
+     * @param e1x E(eta1) x coordinate of the starting point of the arc
+     * @param e1y E(eta2) y coordinate of the starting point of the arc
+     * @param theta The angle that the ellipse bounding rectangle makes with horizontal plane
+     * @param start The start angle of the arc on the ellipse
+     * @param sweep The angle (positive or negative) of the sweep of the arc on the ellipse
      */
-    private static float[] getFloats(String s) {
-        if (s.charAt(0) == 'z' | s.charAt(0) == 'Z') {
-            return new float[0];
-        }
-        try {
-            float[] results = new float[s.length()];
-            int count = 0;
-            int startPosition = 1;
-            int endPosition = 0;
-
-            ExtractFloatResult result = new ExtractFloatResult();
-            int totalLength = s.length();
-
-            // The startPosition should always be the first character of the
-            // current number, and endPosition is the character after the current
-            // number.
-            while (startPosition < totalLength) {
-                extract(s, startPosition, result);
-                endPosition = result.mEndPosition;
-
-                if (startPosition < endPosition) {
-                    results[count++] = Float.parseFloat(
-                            s.substring(startPosition, endPosition));
-                }
-
-                if (result.mEndWithNegSign) {
-                    // Keep the '-' sign with next number.
-                    startPosition = endPosition;
-                } else {
-                    startPosition = endPosition + 1;
-                }
-            }
-            return Arrays.copyOf(results, count);
-        } catch (NumberFormatException e) {
-            Log.e(LOGTAG, "error in parsing \"" + s + "\"");
-            throw e;
+    private static void arcToBezier(PathSink sink,
+            double cx,
+            double cy,
+            double a,
+            double b,
+            double e1x,
+            double e1y,
+            double theta,
+            double start,
+            double sweep) {
+        // Taken from equations at: http://spaceroots.org/documents/ellipse/node8.html
+        // and http://www.spaceroots.org/documents/ellipse/node22.html
+
+        // Maximum of 45 degrees per cubic Bezier segment
+        int numSegments = (int) Math.ceil(Math.abs(sweep * 4 / Math.PI));
+
+        double eta1 = start;
+        double cosTheta = Math.cos(theta);
+        double sinTheta = Math.sin(theta);
+        double cosEta1 = Math.cos(eta1);
+        double sinEta1 = Math.sin(eta1);
+        double ep1x = (-a * cosTheta * sinEta1) - (b * sinTheta * cosEta1);
+        double ep1y = (-a * sinTheta * sinEta1) + (b * cosTheta * cosEta1);
+
+        double anglePerSegment = sweep / numSegments;
+        for (int i = 0; i < numSegments; i++) {
+            double eta2 = eta1 + anglePerSegment;
+            double sinEta2 = Math.sin(eta2);
+            double cosEta2 = Math.cos(eta2);
+            double e2x = cx + (a * cosTheta * cosEta2) - (b * sinTheta * sinEta2);
+            double e2y = cy + (a * sinTheta * cosEta2) + (b * cosTheta * sinEta2);
+            double ep2x = -a * cosTheta * sinEta2 - b * sinTheta * cosEta2;
+            double ep2y = -a * sinTheta * sinEta2 + b * cosTheta * cosEta2;
+            double tanDiff2 = Math.tan((eta2 - eta1) / 2);
+            double alpha =
+                    Math.sin(eta2 - eta1) * (Math.sqrt(4 + (3 * tanDiff2 * tanDiff2)) - 1) / 3;
+            double q1x = e1x + alpha * ep1x;
+            double q1y = e1y + alpha * ep1y;
+            double q2x = e2x - alpha * ep2x;
+            double q2y = e2y - alpha * ep2y;
+
+            sink.cubicTo((float) q1x,
+                    (float) q1y,
+                    (float) q2x,
+                    (float) q2y,
+                    (float) e2x,
+                    (float) e2y);
+            eta1 = eta2;
+            e1x = e2x;
+            e1y = e2y;
+            ep1x = ep2x;
+            ep1y = ep2y;
         }
     }
 
     /**
-     * Calculate the position of the next comma or space or negative sign
-     * @param s the string to search
-     * @param start the position to start searching
-     * @param result the result of the extraction, including the position of the
-     * the starting position of next number, whether it is ending with a '-'.
+     * Resolves the commands to absolute coordinates and feeds them to a
+     * sink. It keeps the current point, the last control point and the
+     * start of the current contour between commands.
      */
-    private static void extract(String s, int start, ExtractFloatResult result) {
-        // Now looking for ' ', ',' or '-' from the start.
-        int currentIndex = start;
-        boolean foundSeparator = false;
-        result.mEndWithNegSign = false;
-        for (; currentIndex < s.length(); currentIndex++) {
-            char currentChar = s.charAt(currentIndex);
-            switch (currentChar) {
-                case ' ':
-                case ',':
-                    foundSeparator = true;
-                    break;
-                case '-':
-                    if (currentIndex != start) {
-                        foundSeparator = true;
-                        result.mEndWithNegSign = true;
-                    }
-                    break;
-            }
-            if (foundSeparator) {
-                break;
-            }
-        }
-        // When there is nothing found, then we put the end position to the end
-        // of the string.
-        result.mEndPosition = currentIndex;
-    }
-
-    /**
-     * Each PathDataNode represents one command in the "d" attribute of the svg
-     * file.
-     * An array of PathDataNode can represent the whole "d" attribute.
-     */
-    public static class PathDataNode {
-        private char mType;
-        private float[] mParams;
-
-        private PathDataNode(char type, float[] params) {
-            mType = type;
-            mParams = params;
-        }
-
-        private PathDataNode(PathDataNode n) {
-            mType = n.mType;
-            mParams = Arrays.copyOf(n.mParams, n.mParams.length);
-        }
-
-        /**
-         * Convert an array of PathDataNode to Path.
-         *
-         * @param node The source array of PathDataNode.
-         * @param path The target Path object.
-         */
-        public static void nodesToPath(PathDataNode[] node, Path path) {
-            float[] current = new float[4];
-            char previousCommand = 'm';
-            for (int i = 0; i < node.length; i++) {
-                addCommand(path, current, previousCommand, node[i].mType, node[i].mParams);
-                previousCommand = node[i].mType;
-            }
+    static final class PathWalker {
+        private final PathSink mSink;
+        private float mCurrentX;
+        private float mCurrentY;
+        private float mCtrlPointX;
+        private float mCtrlPointY;
+        private float mSegmentStartX;
+        private float mSegmentStartY;
+        private char mPreviousCmd = 'm';
+
+        PathWalker(PathSink sink) {
+            mSink = sink;
         }
 
         /**
-         * The current PathDataNode will be interpolated between the
-         * <code>nodeFrom</code> and <code>nodeTo</code> according to the
-         * <code>fraction</code>.
-         *
-         * @param nodeFrom The start value as a PathDataNode.
-         * @param nodeTo The end value as a PathDataNode
-         * @param fraction The fraction to interpolate.
+         * Add one command, its parameters are
+         * <code>val[start]</code> to <code>val[end - 1]</code>.
          */
-        public void interpolatePathDataNode(PathDataNode nodeFrom,
-                PathDataNode nodeTo, float fraction) {
-            for (int i = 0; i < nodeFrom.mParams.length; i++) {
-                mParams[i] = nodeFrom.mParams[i] * (1 - fraction)
-                        + nodeTo.mParams[i] * fraction;
-            }
-        }
-
-        private static void addCommand(Path path, float[] current,
-                char previousCmd, char cmd, float[] val) {
-
+        void addCommand(char cmd, float[] val, int start, int end) {
+            final PathSink sink = mSink;
             int incr = 2;
-            float currentX = current[0];
-            float currentY = current[1];
-            float ctrlPointX = current[2];
-            float ctrlPointY = current[3];
+            float currentX = mCurrentX;
+            float currentY = mCurrentY;
+            float ctrlPointX = mCtrlPointX;
+            float ctrlPointY = mCtrlPointY;
             float reflectiveCtrlPointX;
             float reflectiveCtrlPointY;
+            char previousCmd = mPreviousCmd;
 
             switch (cmd) {
                 case 'z':
                 case 'Z':
-                    path.close();
+                    sink.close();
+                    // The pen moves back to the start of the contour
+                    mCurrentX = mSegmentStartX;
+                    mCurrentY = mSegmentStartY;
+                    mCtrlPointX = mSegmentStartX;
+                    mCtrlPointY = mSegmentStartY;
+                    mPreviousCmd = cmd;
                     return;
                 case 'm':
                 case 'M':
@@ -324,60 +376,70 @@ public class PathParser {
                     incr = 7;
                     break;
             }
-            for (int k = 0; k < val.length; k += incr) {
+            // Dangling parameters which can't form a whole segment are ignored.
+            for (int k = start; k + incr <= end; k += incr) {
                 switch (cmd) {
                     case 'm': // moveto - Start a new sub-path (relative)
-                        path.rMoveTo(val[k + 0], val[k + 1]);
                         currentX += val[k + 0];
                         currentY += val[k + 1];
+                        if (k > start) {
+                            // Following pairs are implicit lineto commands
+                            sink.lineTo(currentX, currentY);
+                        } else {
+                            sink.moveTo(currentX, currentY);
+                            mSegmentStartX = currentX;
+                            mSegmentStartY = currentY;
+                        }
                         break;
                     case 'M': // moveto - Start a new sub-path
-                        path.moveTo(val[k + 0], val[k + 1]);
                         currentX = val[k + 0];
                         currentY = val[k + 1];
+                        if (k > start) {
+                            // Following pairs are implicit lineto commands
+                            sink.lineTo(currentX, currentY);
+                        } else {
+                            sink.moveTo(currentX, currentY);
+                            mSegmentStartX = currentX;
+                            mSegmentStartY = currentY;
+                        }
                         break;
                     case 'l': // lineto - Draw a line from the current point (relative)
-                        path.rLineTo(val[k + 0], val[k + 1]);
                         currentX += val[k + 0];
                         currentY += val[k + 1];
+                        sink.lineTo(currentX, currentY);
                         break;
                     case 'L': // lineto - Draw a line from the current point
-                        path.lineTo(val[k + 0], val[k + 1]);
                         currentX = val[k + 0];
                         currentY = val[k + 1];
-                        break;
-                    case 'z': // closepath - Close the current subpath
-                    case 'Z': // closepath - Close the current subpath
-                        path.close();
+                        sink.lineTo(currentX, currentY);
                         break;
                     case 'h': // horizontal lineto - Draws a horizontal line (relative)
-                        path.rLineTo(val[k + 0], 0);
                         currentX += val[k + 0];
+                        sink.lineTo(currentX, currentY);
                         break;
                     case 'H': // horizontal lineto - Draws a horizontal line
-                        path.lineTo(val[k + 0], currentY);
                         currentX = val[k + 0];
+                        sink.lineTo(currentX, currentY);
                         break;
                     case 'v': // vertical lineto - Draws a vertical line from the current point (r)
-                        path.rLineTo(0, val[k + 0]);
                         currentY += val[k + 0];
+                        sink.lineTo(currentX, currentY);
                         break;
                     case 'V': // vertical lineto - Draws a vertical line from the current point
-                        path.lineTo(currentX, val[k + 0]);
                         currentY = val[k + 0];
+                        sink.lineTo(currentX, currentY);
                         break;
                     case 'c': // curveto - Draws a cubic Bézier curve (relative)
-                        path.rCubicTo(val[k + 0], val[k + 1], val[k + 2], val[k + 3],
-                                val[k + 4], val[k + 5]);
-
+                        sink.cubicTo(currentX + val[k + 0], currentY + val[k + 1],
+                                currentX + val[k + 2], currentY + val[k + 3],
+                                currentX + val[k + 4], currentY + val[k + 5]);
                         ctrlPointX = currentX + val[k + 2];
                         ctrlPointY = currentY + val[k + 3];
                         currentX += val[k + 4];
                         currentY += val[k + 5];
-
                         break;
                     case 'C': // curveto - Draws a cubic Bézier curve
-                        path.cubicTo(val[k + 0], val[k + 1], val[k + 2], val[k + 3],
+                        sink.cubicTo(val[k + 0], val[k + 1], val[k + 2], val[k + 3],
                                 val[k + 4], val[k + 5]);
                         currentX = val[k + 4];
                         currentY = val[k + 5];
@@ -385,22 +447,6 @@ public class PathParser {
                         ctrlPointY = val[k + 3];
                         break;
                     case 's': // smooth curveto - Draws a cubic Bézier curve (reflective cp)
-                        reflectiveCtrlPointX = 0;
-                        reflectiveCtrlPointY = 0;
-                        if (previousCmd == 'c' || previousCmd == 's'
-                                || previousCmd == 'C' || previousCmd == 'S') {
-                            reflectiveCtrlPointX = currentX - ctrlPointX;
-                            reflectiveCtrlPointY = currentY - ctrlPointY;
-                        }
-                        path.rCubicTo(reflectiveCtrlPointX, reflectiveCtrlPointY,
-                                val[k + 0], val[k + 1],
-                                val[k + 2], val[k + 3]);
-
-                        ctrlPointX = currentX + val[k + 0];
-                        ctrlPointY = currentY + val[k + 1];
-                        currentX += val[k + 2];
-                        currentY += val[k + 3];
-                        break;
                     case 'S': // shorthand/smooth curveto Draws a cubic Bézier curve(reflective cp)
                         reflectiveCtrlPointX = currentX;
                         reflectiveCtrlPointY = currentY;
@@ -409,42 +455,35 @@ public class PathParser {
                             reflectiveCtrlPointX = 2 * currentX - ctrlPointX;
                             reflectiveCtrlPointY = 2 * currentY - ctrlPointY;
                         }
-                        path.cubicTo(reflectiveCtrlPointX, reflectiveCtrlPointY,
-                                val[k + 0], val[k + 1], val[k + 2], val[k + 3]);
-                        ctrlPointX = val[k + 0];
-                        ctrlPointY = val[k + 1];
-                        currentX = val[k + 2];
-                        currentY = val[k + 3];
+                        if (cmd == 's') {
+                            ctrlPointX = currentX + val[k + 0];
+                            ctrlPointY = currentY + val[k + 1];
+                            currentX += val[k + 2];
+                            currentY += val[k + 3];
+                        } else {
+                            ctrlPointX = val[k + 0];
+                            ctrlPointY = val[k + 1];
+                            currentX = val[k + 2];
+                            currentY = val[k + 3];
+                        }
+                        sink.cubicTo(reflectiveCtrlPointX, reflectiveCtrlPointY,
+                                ctrlPointX, ctrlPointY, currentX, currentY);
                         break;
                     case 'q': // Draws a quadratic Bézier (relative)
-                        path.rQuadTo(val[k + 0], val[k + 1], val[k + 2], val[k + 3]);
                         ctrlPointX = currentX + val[k + 0];
                         ctrlPointY = currentY + val[k + 1];
                         currentX += val[k + 2];
                         currentY += val[k + 3];
+                        sink.quadTo(ctrlPointX, ctrlPointY, currentX, currentY);
                         break;
                     case 'Q': // Draws a quadratic Bézier
-                        path.quadTo(val[k + 0], val[k + 1], val[k + 2], val[k + 3]);
                         ctrlPointX = val[k + 0];
                         ctrlPointY = val[k + 1];
                         currentX = val[k + 2];
                         currentY = val[k + 3];
+                        sink.quadTo(ctrlPointX, ctrlPointY, currentX, currentY);
                         break;
                     case 't': // Draws a quadratic Bézier curve(reflective control point)(relative)
-                        reflectiveCtrlPointX = 0;
-                        reflectiveCtrlPointY = 0;
-                        if (previousCmd == 'q' || previousCmd == 't'
-                                || previousCmd == 'Q' || previousCmd == 'T') {
-                            reflectiveCtrlPointX = currentX - ctrlPointX;
-                            reflectiveCtrlPointY = currentY - ctrlPointY;
-                        }
-                        path.rQuadTo(reflectiveCtrlPointX, reflectiveCtrlPointY,
-                                val[k + 0], val[k + 1]);
-                        ctrlPointX = currentX + reflectiveCtrlPointX;
-                        ctrlPointY = currentY + reflectiveCtrlPointY;
-                        currentX += val[k + 0];
-                        currentY += val[k + 1];
-                        break;
                     case 'T': // Draws a quadratic Bézier curve (reflective control point)
                         reflectiveCtrlPointX = currentX;
                         reflectiveCtrlPointY = currentY;
@@ -453,198 +492,326 @@ public class PathParser {
                             reflectiveCtrlPointX = 2 * currentX - ctrlPointX;
                             reflectiveCtrlPointY = 2 * currentY - ctrlPointY;
                         }
-                        path.quadTo(reflectiveCtrlPointX, reflectiveCtrlPointY,
-                                val[k + 0], val[k + 1]);
                         ctrlPointX = reflectiveCtrlPointX;
                         ctrlPointY = reflectiveCtrlPointY;
-                        currentX = val[k + 0];
-                        currentY = val[k + 1];
+                        if (cmd == 't') {
+                            currentX += val[k + 0];
+                            currentY += val[k + 1];
+                        } else {
+                            currentX = val[k + 0];
+                            currentY = val[k + 1];
+                        }
+                        sink.quadTo(ctrlPointX, ctrlPointY, currentX, currentY);
                         break;
                     case 'a': // Draws an elliptical arc
                         // (rx ry x-axis-rotation large-arc-flag sweep-flag x y)
-                        drawArc(path,
-                                currentX,
-                                currentY,
-                                val[k + 5] + currentX,
-                                val[k + 6] + currentY,
-                                val[k + 0],
-                                val[k + 1],
-                                val[k + 2],
-                                val[k + 3] != 0,
-                                val[k + 4] != 0);
                         currentX += val[k + 5];
                         currentY += val[k + 6];
+                        sink.arcTo(val[k + 0], val[k + 1], val[k + 2],
+                                val[k + 3] != 0, val[k + 4] != 0, currentX, currentY);
                         ctrlPointX = currentX;
                         ctrlPointY = currentY;
                         break;
                     case 'A': // Draws an elliptical arc
-                        drawArc(path,
-                                currentX,
-                                currentY,
-                                val[k + 5],
-                                val[k + 6],
-                                val[k + 0],
-                                val[k + 1],
-                                val[k + 2],
-                                val[k + 3] != 0,
-                                val[k + 4] != 0);
                         currentX = val[k + 5];
                         currentY = val[k + 6];
+                        sink.arcTo(val[k + 0], val[k + 1], val[k + 2],
+                                val[k + 3] != 0, val[k + 4] != 0, currentX, currentY);
                         ctrlPointX = currentX;
                         ctrlPointY = currentY;
                         break;
                 }
                 previousCmd = cmd;
             }
-            current[0] = currentX;
-            current[1] = currentY;
-            current[2] = ctrlPointX;
-            current[3] = ctrlPointY;
-        }
-
-        private static void drawArc(Path p,
-                float x0,
-                float y0,
-                float x1,
-                float y1,
-                float a,
-                float b,
-                float theta,
-                boolean isMoreThanHalf,
-                boolean isPositiveArc) {
-
-            /* Convert rotation angle from degrees to radians */
-            double thetaD = Math.toRadians(theta);
-            /* Pre-compute rotation matrix entries */
-            double cosTheta = Math.cos(thetaD);
-            double sinTheta = Math.sin(thetaD);
-            /* Transform (x0, y0) and (x1, y1) into unit space */
-            /* using (inverse) rotation, followed by (inverse) scale */
-            double x0p = (x0 * cosTheta + y0 * sinTheta) / a;
-            double y0p = (-x0 * sinTheta + y0 * cosTheta) / b;
-            double x1p = (x1 * cosTheta + y1 * sinTheta) / a;
-            double y1p = (-x1 * sinTheta + y1 * cosTheta) / b;
-
-            /* Compute differences and averages */
-            double dx = x0p - x1p;
-            double dy = y0p - y1p;
-            double xm = (x0p + x1p) / 2;
-            double ym = (y0p + y1p) / 2;
-            /* Solve for intersecting unit circles */
-            double dsq = dx * dx + dy * dy;
-            if (dsq == 0.0) {
-                Log.w(LOGTAG, " Points are coincident");
-                return; /* Points are coincident */
+            mCurrentX = currentX;
+            mCurrentY = currentY;
+            mCtrlPointX = ctrlPointX;
+            mCtrlPointY = ctrlPointY;
+            mPreviousCmd = cmd;
+        }
+    }
+
+    /**
+     * Single pass scanner over the "d" string. Commands and numbers are parsed
+     * straight from the characters into growable packed buffers, which are
+     * copied once into the resulting PathData.
+     */
+    private static final class PathDataScanner {
+        private static final int INITIAL_CAPACITY = 16;
+
+        // Largest mantissa which can be exactly represented by a double.
+        private static final long MAX_EXACT_MANTISSA = 1L << 53;
+        // Powers of ten which can be exactly represented by a double.
+        private static final double[] POWERS_OF_TEN = {
+                1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+                1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+        };
+
+        private final String mData;
+        private final int mLength;
+        private int mPosition;
+        private int mCommandStart;
+
+        private byte[] mCommands = new byte[INITIAL_CAPACITY];
+        private int[] mOffsets = new int[INITIAL_CAPACITY + 1];
+        private int mCommandCount;
+
+        private float[] mParams = new float[INITIAL_CAPACITY];
+        private int mParamCount;
+
+        public PathDataScanner(String data) {
+            mData = data;
+            mLength = data.length();
+        }
+
+        /**
+         * Skip to the next command letter.
+         *
+         * @return the command, or 0 if the end of the string is reached
+         */
+        public char nextCommand() {
+            while (mPosition < mLength) {
+                char c = mData.charAt(mPosition++);
+                if (isCommand(c)) {
+                    mCommandStart = mPosition - 1;
+                    return c;
+                }
             }
-            double disc = 1.0 / dsq - 1.0 / 4.0;
-            if (disc < 0.0) {
-                Log.w(LOGTAG, "Points are too far apart " + dsq);
-                float adjust = (float) (Math.sqrt(dsq) / 1.99999);
-                drawArc(p, x0, y0, x1, y1, a * adjust,
-                        b * adjust, theta, isMoreThanHalf, isPositiveArc);
-                return; /* Points are too far apart */
+            return 0;
+        }
+
+        /**
+         * Add the command and read all the numbers between it and the next
+         * command. The parameters of 'z' and 'Z' are skipped.
+         */
+        public void readCommand(char cmd) {
+            if (mCommandCount == mCommands.length) {
+                mCommands = Arrays.copyOf(mCommands, mCommandCount * 2);
+                mOffsets = Arrays.copyOf(mOffsets, mCommandCount * 2 + 1);
             }
-            double s = Math.sqrt(disc);
-            double sdx = s * dx;
-            double sdy = s * dy;
-            double cx;
-            double cy;
-            if (isMoreThanHalf == isPositiveArc) {
-                cx = xm - sdy;
-                cy = ym + sdx;
-            } else {
-                cx = xm + sdy;
-                cy = ym - sdx;
+            mCommands[mCommandCount] = (byte) cmd;
+            mOffsets[mCommandCount] = mParamCount;
+            mCommandCount++;
+
+            boolean skip = cmd == 'z' || cmd == 'Z';
+            while (mPosition < mLength) {
+                char c = mData.charAt(mPosition);
+                if (c <= ' ' || c == ',') {
+                    mPosition++;
+                } else if (isCommand(c)) {
+                    break;
+                } else {
+                    float value = readFloat();
+                    if (!skip) {
+                        addParam(value);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Drop the commands and parameters read so far, so the buffers can
+         * be reused when streaming.
+         */
+        public void reset() {
+            mCommandCount = 0;
+            mParamCount = 0;
+        }
+
+        public PathData toPathData() {
+            int[] offsets = Arrays.copyOf(mOffsets, mCommandCount + 1);
+            offsets[mCommandCount] = mParamCount;
+            return new PathData(Arrays.copyOf(mCommands, mCommandCount), offsets,
+                    Arrays.copyOf(mParams, mParamCount));
+        }
+
+        private void addParam(float value) {
+            if (mParamCount == mParams.length) {
+                mParams = Arrays.copyOf(mParams, mParamCount * 2);
             }
+            mParams[mParamCount++] = value;
+        }
 
-            double eta0 = Math.atan2((y0p - cy), (x0p - cx));
+        private static boolean isCommand(char c) {
+            // 'e' and 'E' belong to the exponent of a number.
+            return (((c - 'A') * (c - 'Z') <= 0) || ((c - 'a') * (c - 'z') <= 0))
+                    && c != 'e' && c != 'E';
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
 
-            double eta1 = Math.atan2((y1p - cy), (x1p - cx));
+        /**
+         * Parse one float starting at the current position. A number ends at a
+         * separator, at a sign which is not part of an exponent, at a second
+         * decimal point or at a command letter.
+         */
+        private float readFloat() {
+            final String s = mData;
+            final int length = mLength;
+            final int start = mPosition;
+            int i = start;
+
+            boolean negative = false;
+            char c = s.charAt(i);
+            if (c == '-' || c == '+') {
+                negative = c == '-';
+                i++;
+            }
 
-            double sweep = (eta1 - eta0);
-            if (isPositiveArc != (sweep >= 0)) {
-                if (sweep > 0) {
-                    sweep -= 2 * Math.PI;
+            long mantissa = 0;
+            int exponent = 0;
+            int significantDigits = 0;
+            boolean exact = true;
+            boolean hasDigit = false;
+
+            // Integer part
+            for (; i < length && isDigit(c = s.charAt(i)); i++) {
+                hasDigit = true;
+                if (significantDigits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) {
+                        significantDigits++;
+                    }
                 } else {
-                    sweep += 2 * Math.PI;
+                    exponent++;
+                    exact &= c == '0';
+                }
+            }
+
+            // Fraction part
+            if (i < length && s.charAt(i) == '.') {
+                for (i++; i < length && isDigit(c = s.charAt(i)); i++) {
+                    hasDigit = true;
+                    if (significantDigits < 18) {
+                        mantissa = mantissa * 10 + (c - '0');
+                        if (mantissa != 0) {
+                            significantDigits++;
+                        }
+                        exponent--;
+                    } else {
+                        exact &= c == '0';
+                    }
                 }
             }
 
-            cx *= a;
-            cy *= b;
-            double tcx = cx;
-            cx = cx * cosTheta - cy * sinTheta;
-            cy = tcx * sinTheta + cy * cosTheta;
+            // Exponent part
+            if (hasDigit && i < length && ((c = s.charAt(i)) == 'e' || c == 'E')) {
+                i++;
+                boolean negativeExponent = false;
+                if (i < length && ((c = s.charAt(i)) == '-' || c == '+')) {
+                    negativeExponent = c == '-';
+                    i++;
+                }
+                int expValue = 0;
+                boolean hasExpDigit = false;
+                for (; i < length && isDigit(c = s.charAt(i)); i++) {
+                    hasExpDigit = true;
+                    if (expValue < 10000) {
+                        expValue = expValue * 10 + (c - '0');
+                    }
+                }
+                if (!hasExpDigit) {
+                    throw numberFormatError(i);
+                }
+                exponent += negativeExponent ? -expValue : expValue;
+            }
 
-            arcToBezier(p, cx, cy, a, b, x0, y0, thetaD, eta0, sweep);
+            if (!hasDigit) {
+                throw numberFormatError(i);
+            }
+            mPosition = i;
+
+            if (mantissa == 0 && exact) {
+                return negative ? -0.0f : 0.0f;
+            }
+
+            if (exact && mantissa <= MAX_EXACT_MANTISSA
+                    && exponent >= -22 && exponent <= 22) {
+                // Both operands are exact, so the double is correctly rounded.
+                double value = exponent >= 0
+                        ? mantissa * POWERS_OF_TEN[exponent]
+                        : mantissa / POWERS_OF_TEN[-exponent];
+                // Rounding the double again to float is only wrong when the
+                // double lies exactly halfway between two floats.
+                if (value >= Float.MIN_NORMAL && value < Float.MAX_VALUE
+                        && (Double.doubleToRawLongBits(value) & 0x1FFFFFFFL) != 0x10000000L) {
+                    float result = (float) value;
+                    return negative ? -result : result;
+                }
+            }
+
+            // Rare case, let the platform do the hard work.
+            return Float.parseFloat(s.substring(start, i));
+        }
+
+        private NumberFormatException numberFormatError(int position) {
+            int end = position;
+            while (end < mLength && !isCommand(mData.charAt(end))) {
+                end++;
+            }
+            String segment = mData.substring(mCommandStart, end).trim();
+            Log.e(LOGTAG, "error in parsing \"" + segment + "\"");
+            return new NumberFormatException("Invalid float at " + position + " in \""
+                    + segment + "\"");
+        }
+    }
+
+    /**
+     * Each PathDataNode represents one command in the "d" attribute of the svg
+     * file.
+     * An array of PathDataNode can represent the whole "d" attribute.
+     */
+    public static class PathDataNode {
+        private char mType;
+        private float[] mParams;
+
+        PathDataNode(char type, float[] params) {
+            mType = type;
+            mParams = params;
+        }
+
+        private PathDataNode(PathDataNode n) {
+            mType = n.mType;
+            mParams = Arrays.copyOf(n.mParams, n.mParams.length);
+        }
+
+        char getType() {
+            return mType;
+        }
+
+        float[] getParams() {
+            return mParams;
         }
 
         /**
-         * Converts an arc to cubic Bezier segments and records them in p.
+         * Convert an array of PathDataNode to Path.
          *
-         * @param p The target for the cubic Bezier segments
-         * @param cx The x coordinate center of the ellipse
-         * @param cy The y coordinate center of the ellipse
-         * @param a The radius of the ellipse in the horizontal direction
-         * @param b The radius of the ellipse in the vertical direction
-         * @param e1x E(eta1) x coordinate of the starting point of the arc
-         * @param e1y E(eta2) y coordinate of the starting point of the arc
-         * @param theta The angle that the ellipse bounding rectangle makes with horizontal plane
-         * @param start The start angle of the arc on the ellipse
-         * @param sweep The angle (positive or negative) of the sweep of the arc on the ellipse
+         * @param node The source array of PathDataNode.
+         * @param path The target Path object.
          */
-        private static void arcToBezier(Path p,
-                double cx,
-                double cy,
-                double a,
-                double b,
-                double e1x,
-                double e1y,
-                double theta,
-                double start,
-                double sweep) {
-            // Taken from equations at: http://spaceroots.org/documents/ellipse/node8.html
-            // and http://www.spaceroots.org/documents/ellipse/node22.html
-
-            // Maximum of 45 degrees per cubic Bezier segment
-            int numSegments = Math.abs((int) Math.ceil(sweep * 4 / Math.PI));
-
-            double eta1 = start;
-            double cosTheta = Math.cos(theta);
-            double sinTheta = Math.sin(theta);
-            double cosEta1 = Math.cos(eta1);
-            double sinEta1 = Math.sin(eta1);
-            double ep1x = (-a * cosTheta * sinEta1) - (b * sinTheta * cosEta1);
-            double ep1y = (-a * sinTheta * sinEta1) + (b * cosTheta * cosEta1);
-
-            double anglePerSegment = sweep / numSegments;
-            for (int i = 0; i < numSegments; i++) {
-                double eta2 = eta1 + anglePerSegment;
-                double sinEta2 = Math.sin(eta2);
-                double cosEta2 = Math.cos(eta2);
-                double e2x = cx + (a * cosTheta * cosEta2) - (b * sinTheta * sinEta2);
-                double e2y = cy + (a * sinTheta * cosEta2) + (b * cosTheta * sinEta2);
-                double ep2x = -a * cosTheta * sinEta2 - b * sinTheta * cosEta2;
-                double ep2y = -a * sinTheta * sinEta2 + b * cosTheta * cosEta2;
-                double tanDiff2 = Math.tan((eta2 - eta1) / 2);
-                double alpha =
-                        Math.sin(eta2 - eta1) * (Math.sqrt(4 + (3 * tanDiff2 * tanDiff2)) - 1) / 3;
-                double q1x = e1x + alpha * ep1x;
-                double q1y = e1y + alpha * ep1y;
-                double q2x = e2x - alpha * ep2x;
-                double q2y = e2y - alpha * ep2y;
-
-                p.cubicTo((float) q1x,
-                        (float) q1y,
-                        (float) q2x,
-                        (float) q2y,
-                        (float) e2x,
-                        (float) e2y);
-                eta1 = eta2;
-                e1x = e2x;
-                e1y = e2y;
-                ep1x = ep2x;
-                ep1y = ep2y;
+        public static void nodesToPath(PathDataNode[] node, Path path) {
+            PathWalker walker = new PathWalker(new GraphicsPathSink(path));
+            for (int i = 0; i < node.length; i++) {
+                walker.addCommand(node[i].mType, node[i].mParams, 0, node[i].mParams.length);
+            }
+        }
+
+        /**
+         * The current PathDataNode will be interpolated between the
+         * <code>nodeFrom</code> and <code>nodeTo</code> according to the
+         * <code>fraction</code>.
+         *
+         * @param nodeFrom The start value as a PathDataNode.
+         * @param nodeTo The end value as a PathDataNode
+         * @param fraction The fraction to interpolate.
+         */
+        public void interpolatePathDataNode(PathDataNode nodeFrom,
+                PathDataNode nodeTo, float fraction) {
+            for (int i = 0; i < nodeFrom.mParams.length; i++) {
+                mParams[i] = nodeFrom.mParams[i] * (1 - fraction)
+                        + nodeTo.mParams[i] * fraction;
             }
         }
     }
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.util;
+
+/**
+ * Receives the commands of a path one by one, see
+ * {@link PathParser#parsePathData(String, PathSink)} and
+ * {@link PathData#visit(PathSink)}.
+ * <p/>
+ * All the coordinates are absolute. Relative commands, shorthand curves
+ * and horizontal or vertical lines are resolved before they reach the sink.
+ */
+public interface PathSink {
+
+    void moveTo(float x, float y);
+
+    void lineTo(float x, float y);
+
+    void quadTo(float x1, float y1, float x2, float y2);
+
+    void cubicTo(float x1, float y1, float x2, float y2, float x3, float y3);
+
+    /**
+     * Elliptical arc from the current point to (x, y), with the same
+     * parameters as the "A" command of svg. Use
+     * {@link PathParser#arcToCubics(PathSink, float, float, float, float, float, float, float, boolean, boolean)}
+     * to convert it to cubic Bézier curves.
+     */
+    void arcTo(float rx, float ry, float rotation, boolean largeArc, boolean sweep,
+            float x, float y);
+
+    /**
+     * Close the current contour. The current point moves back to the start
+     * of the contour.
+     */
+    void close();
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2015 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.vectorold.util;
+
+import android.graphics.Path;
+
+/**
+ * A {@link PathSink} which adds a simplified copy of the commands to a
+ * {@link Path}. Curves and arcs are flattened into lines, then the points
+ * which are closer than the tolerance to the line between their neighbours
+ * are dropped. The result never strays more than the tolerance from the
+ * original path, and every point of it lies on the original path.
+ * <p/>
+ * Call {@link #finish()} after the last command.
+ */
+public class SimplifyingPathSink implements PathSink {
+    private Path mPath;
+    // Half of the tolerance for flattening and half for dropping points
+    private float mHalfTolerance;
+
+    // The points of the current contour, x and y interleaved
+    private float[] mPoints = new float[64];
+    private int mPointCount;
+    private boolean[] mKeep = new boolean[32];
+    private int[] mStack = new int[32];
+
+    private float mCurrentX;
+    private float mCurrentY;
+    private float mStartX;
+    private float mStartY;
+
+    public SimplifyingPathSink(Path path, float tolerance) {
+        setPath(path, tolerance);
+    }
+
+    /**
+     * Start adding to another path.
+     */
+    public void setPath(Path path, float tolerance) {
+        mPath = path;
+        mHalfTolerance = tolerance / 2;
+        mPointCount = 0;
+        mCurrentX = 0;
+        mCurrentY = 0;
+        mStartX = 0;
+        mStartY = 0;
+    }
+
+    public Path getPath() {
+        return mPath;
+    }
+
+    private void addPoint(float x, float y) {
+        final int index = mPointCount * 2;
+        if (index + 2 > mPoints.length) {
+            final float[] points = new float[mPoints.length * 2];
+            System.arraycopy(mPoints, 0, points, 0, index);
+            mPoints = points;
+        }
+        mPoints[index] = x;
+        mPoints[index + 1] = y;
+        mPointCount++;
+    }
+
+    /**
+     * Make sure the contour starts at the current point, a contour may
+     * continue after close() without moveTo().
+     */
+    private void startContourIfNeeded() {
+        if (mPointCount == 0) {
+            addPoint(mCurrentX, mCurrentY);
+        }
+    }
+
+    @Override
+    public void moveTo(float x, float y) {
+        flush(false);
+        addPoint(x, y);
+        mCurrentX = mStartX = x;
+        mCurrentY = mStartY = y;
+    }
+
+    @Override
+    public void lineTo(float x, float y) {
+        startContourIfNeeded();
+        addPoint(x, y);
+        mCurrentX = x;
+        mCurrentY = y;
+    }
+
+    @Override
+    public void quadTo(float x1, float y1, float x2, float y2) {
+        startContourIfNeeded();
+        final float x0 = mCurrentX;
+        final float y0 = mCurrentY;
+        // Wang's formula, the number of lines to stay within the tolerance
+        final float ddx = x0 - 2 * x1 + x2;
+        final float ddy = y0 - 2 * y1 + y2;
+        final int count = getSegmentCount(0.25f * (float) Math.hypot(ddx, ddy));
+        for (int i = 1; i < count; i++) {
+            final float t = (float) i / count;
+            final float u = 1 - t;
+            addPoint(u * u * x0 + 2 * u * t * x1 + t * t * x2,
+                    u * u * y0 + 2 * u * t * y1 + t * t * y2);
+        }
+        addPoint(x2, y2);
+        mCurrentX = x2;
+        mCurrentY = y2;
+    }
+
+    @Override
+    public void cubicTo(float x1, float y1, float x2, float y2, float x3, float y3) {
+        startContourIfNeeded();
+        final float x0 = mCurrentX;
+        final float y0 = mCurrentY;
+        final float dd1 = (float) Math.hypot(x0 - 2 * x1 + x2, y0 - 2 * y1 + y2);
+        final float dd2 = (float) Math.hypot(x1 - 2 * x2 + x3, y1 - 2 * y2 + y3);
+        final int count = getSegmentCount(0.75f * Math.max(dd1, dd2));
+        for (int i = 1; i < count; i++) {
+            final float t = (float) i / count;
+            final float u = 1 - t;
+            final float a = u * u * u;
+            final float b = 3 * u * u * t;
+            final float c = 3 * u * t * t;
+            final float d = t * t * t;
+            addPoint(a * x0 + b * x1 + c * x2 + d * x3,
+                    a * y0 + b * y1 + c * y2 + d * y3);
+        }
+        addPoint(x3, y3);
+        mCurrentX = x3;
+        mCurrentY = y3;
+    }
+
+    private int getSegmentCount(float deviation) {
+        final int count = (int) Math.ceil(Math.sqrt(deviation / mHalfTolerance));
+        // Cap it for huge curves at tiny tolerances
+        return Math.max(1, Math.min(count, 100));
+    }
+
+    @Override
+    public void arcTo(float rx, float ry, float rotation, boolean largeArc, boolean sweep,
+            float x, float y) {
+        PathParser.arcToCubics(this, mCurrentX, mCurrentY, x, y, rx, ry, rotation,
+                largeArc, sweep);
+        // Keep the exact end point rather than the computed one
+        mCurrentX = x;
+        mCurrentY = y;
+    }
+
+    @Override
+    public void close() {
+        startContourIfNeeded();
+        flush(true);
+        mCurrentX = mStartX;
+        mCurrentY = mStartY;
+    }
+
+    /**
+     * Add the last contour to the path.
+     */
+    public void finish() {
+        flush(false);
+    }
+
+    private void flush(boolean close) {
+        final int count = mPointCount;
+        if (count == 0) {
+            return;
+        }
+        mPointCount = 0;
+
+        final float[] points = mPoints;
+        final boolean[] keep = markPoints(count);
+        final Path path = mPath;
+        path.moveTo(points[0], points[1]);
+        for (int i = 1; i < count; i++) {
+            if (keep[i]) {
+                path.lineTo(points[i * 2], points[i * 2 + 1]);
+            }
+        }
+        if (close) {
+            path.close();
+        }
+    }
+
+    /**
+     * Douglas-Peucker, the end points are always kept.
+     */
+    private boolean[] markPoints(int count) {
+        if (mKeep.length < count) {
+            mKeep = new boolean[Math.max(count, mKeep.length * 2)];
+        }
+        final boolean[] keep = mKeep;
+        for (int i = 0; i < count; i++) {
+            keep[i] = false;
+        }
+        keep[0] = true;
+        keep[count - 1] = true;
+
+        final float[] points = mPoints;
+        final float tolerance = mHalfTolerance;
+        int[] stack = mStack;
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+        while (top > 0) {
+            final int last = stack[--top];
+            final int first = stack[--top];
+            final float x0 = points[first * 2];
+            final float y0 = points[first * 2 + 1];
+            final float dx = points[last * 2] - x0;
+            final float dy = points[last * 2 + 1] - y0;
+            final float lengthSquared = dx * dx + dy * dy;
+
+            int farthest = -1;
+            float maxDistance = tolerance;
+            for (int i = first + 1; i < last; i++) {
+                final float px = points[i * 2] - x0;
+                final float py = points[i * 2 + 1] - y0;
+                // The distance to the segment, not to the line through it,
+                // so points which turn back are kept. The ends of closed
+                // contours meet, then it is the distance to the end.
+                float t = lengthSquared == 0.0f ? 0.0f : (px * dx + py * dy) / lengthSquared;
+                t = Math.max(0.0f, Math.min(t, 1.0f));
+                final float distance = (float) Math.hypot(px - t * dx, py - t * dy);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+
+            if (farthest != -1) {
+                keep[farthest] = true;
+                if (top + 4 > stack.length) {
+                    final int[] newStack = new int[stack.length * 2];
+                    System.arraycopy(stack, 0, newStack, 0, top);
+                    stack = newStack;
+                    mStack = stack;
+                }
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+        return keep;
+    }
+}